@@ -0,0 +1,147 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+@CommandMetaData(
+    name = "backfill-notes",
+    description = "Create the notes for existing service user commits")
+class BackfillNotesCommand extends SshCommand {
+
+  @Argument(index = 0, multiValued = true, metaVar = "PROJECT", usage = "projects to backfill")
+  private List<String> projects = new ArrayList<>();
+
+  @Option(name = "--all", usage = "backfill all projects")
+  private boolean all;
+
+  @Option(
+      name = "--threads",
+      metaVar = "N",
+      usage = "number of projects that are processed in parallel")
+  private int threads = 2;
+
+  @Option(name = "--reset", usage = "ignore the checkpoints of previous runs")
+  private boolean reset;
+
+  @Inject private BackfillServiceUserNotes backfill;
+  @Inject private ProjectCache projectCache;
+
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicLong walked = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+
+  @Override
+  protected void run() throws UnloggedFailure {
+    List<Project.NameKey> projectNames = new ArrayList<>();
+    if (all) {
+      projectNames.addAll(projectCache.all());
+    } else {
+      for (String p : projects) {
+        Project.NameKey projectName = Project.nameKey(p);
+        if (!projectCache.get(projectName).isPresent()) {
+          throw die("project not found: " + p);
+        }
+        projectNames.add(projectName);
+      }
+    }
+    if (projectNames.isEmpty()) {
+      throw die("no projects given, specify projects or --all");
+    }
+
+    long start = System.nanoTime();
+    // Each task takes the next project until all projects are done, so that at most --threads
+    // projects of this run are processed at the same time.
+    Queue<Project.NameKey> remaining = new ConcurrentLinkedQueue<>(projectNames);
+    List<Future<?>> tasks = new ArrayList<>();
+    try {
+      for (int i = 0; i < Math.min(Math.max(1, threads), projectNames.size()); i++) {
+        tasks.add(
+            backfill.submit(
+                () -> {
+                  Project.NameKey projectName;
+                  while (!Thread.currentThread().isInterrupted()
+                      && (projectName = remaining.poll()) != null) {
+                    backfillProject(projectName);
+                  }
+                }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (RejectedExecutionException e) {
+      tasks.forEach(t -> t.cancel(true));
+      throw die("backfill queue is stopped");
+    } catch (ExecutionException e) {
+      tasks.forEach(t -> t.cancel(true));
+      throw die(e.getCause());
+    } catch (InterruptedException e) {
+      tasks.forEach(t -> t.cancel(true));
+      Thread.currentThread().interrupt();
+      throw die("interrupted");
+    }
+
+    long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    print(
+        String.format(
+            "%d projects done, %d failed, %d commits walked, %d notes created in %ds"
+                + " (%d commits/s)",
+            projectNames.size() - failed.get(),
+            failed.get(),
+            walked.get(),
+            created.get(),
+            seconds,
+            walked.get() / seconds));
+  }
+
+  private void backfillProject(Project.NameKey projectName) {
+    try {
+      BackfillServiceUserNotes.Result result = backfill.backfill(projectName, reset, this::print);
+      walked.addAndGet(result.walkedCommits);
+      created.addAndGet(result.createdNotes);
+      print(
+          String.format(
+              "%s: done, %d commits walked, %d notes created",
+              projectName.get(), result.walkedCommits, result.createdNotes));
+    } catch (Exception e) {
+      failed.incrementAndGet();
+      print(String.format("%s: failed: %s", projectName.get(), e.getMessage()));
+    }
+  }
+
+  private synchronized void print(String msg) {
+    stdout.println(msg);
+    stdout.flush();
+  }
+}
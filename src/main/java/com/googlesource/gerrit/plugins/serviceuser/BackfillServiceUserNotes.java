@@ -0,0 +1,191 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.Url;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Creates the notes for the service user commits in the existing history of a project.
+ *
+ * <p>The branches and tags of the project are processed one after the other, and the notes for
+ * each of them are committed separately. Once a branch or tag is done, its tip is recorded in a
+ * checkpoint file in the plugin data directory. A later run doesn't walk the history of recorded
+ * tips again, hence an interrupted backfill can be resumed.
+ *
+ * <p>The backfills run on the {@code ServiceUserNotesBackfill} work queue, which is shared by all
+ * runs of the {@code backfill-notes} command.
+ */
+@Singleton
+class BackfillServiceUserNotes implements LifecycleListener {
+  static final String QUEUE_NAME = "ServiceUserNotesBackfill";
+
+  private static final String CHECKPOINT_SECTION = "ref";
+  private static final String CHECKPOINT_KEY_TIP = "tip";
+
+  /** Statistics of the backfill of one project. */
+  static class Result {
+    int walkedCommits;
+    int createdNotes;
+  }
+
+  static LifecycleModule module() {
+    return new LifecycleModule() {
+      @Override
+      protected void configure() {
+        bind(BackfillServiceUserNotes.class);
+        listener().to(BackfillServiceUserNotes.class);
+      }
+    };
+  }
+
+  private final CreateServiceUserNotes.Factory serviceUserNotesFactory;
+  private final GitRepositoryManager repoManager;
+  private final WorkQueue workQueue;
+  private final Path checkpointDir;
+  private final int threads;
+
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  BackfillServiceUserNotes(
+      CreateServiceUserNotes.Factory serviceUserNotesFactory,
+      GitRepositoryManager repoManager,
+      WorkQueue workQueue,
+      PluginConfigFactory cfgFactory,
+      @PluginName String pluginName,
+      @PluginData Path pluginData) {
+    this.serviceUserNotesFactory = serviceUserNotesFactory;
+    this.repoManager = repoManager;
+    this.workQueue = workQueue;
+    this.checkpointDir = pluginData.resolve("backfill");
+    this.threads =
+        Math.max(1, cfgFactory.getFromGerritConfig(pluginName).getInt("backfillNotesThreads", 4));
+  }
+
+  @Override
+  public void start() {
+    executor = workQueue.createQueue(threads, QUEUE_NAME);
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService e = executor;
+    executor = null;
+    if (e != null) {
+      e.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the given task on the backfill work queue.
+   *
+   * @throws RejectedExecutionException if the queue is stopped
+   */
+  Future<?> submit(Runnable task) {
+    ScheduledExecutorService e = executor;
+    if (e == null) {
+      throw new RejectedExecutionException("Backfill queue is stopped");
+    }
+    return e.submit(task);
+  }
+
+  /**
+   * Creates the missing notes for the history of all branches and tags of the given project.
+   *
+   * @param project the project
+   * @param reset whether the checkpoint of the project should be ignored
+   * @param progress receives a message whenever a branch or tag is done
+   */
+  Result backfill(Project.NameKey project, boolean reset, Consumer<String> progress)
+      throws IOException, RestApiException, ConfigInvalidException {
+    Result result = new Result();
+    FileBasedConfig checkpoint = loadCheckpoint(project, reset);
+    Set<ObjectId> done = new LinkedHashSet<>();
+    for (String ref : checkpoint.getSubsections(CHECKPOINT_SECTION)) {
+      String tip = checkpoint.getString(CHECKPOINT_SECTION, ref, CHECKPOINT_KEY_TIP);
+      if (ObjectId.isId(tip)) {
+        done.add(ObjectId.fromString(tip));
+      }
+    }
+
+    try (Repository git = repoManager.openRepository(project)) {
+      Map<String, ObjectId> tips = new LinkedHashMap<>();
+      for (Ref r : git.getRefDatabase().getRefsByPrefix(Constants.R_HEADS, Constants.R_TAGS)) {
+        if (r.getObjectId() != null && !done.contains(r.getObjectId())) {
+          tips.put(r.getName(), r.getObjectId());
+        }
+      }
+
+      for (Map.Entry<String, ObjectId> tip : tips.entrySet()) {
+        CreateServiceUserNotes crn = serviceUserNotesFactory.create(project, git);
+        int walked = crn.createNotesForHistory(tip.getKey(), tip.getValue(), done);
+        crn.commitNewNotes();
+        result.walkedCommits += walked;
+        result.createdNotes += crn.getNewNoteCount();
+
+        done.add(tip.getValue());
+        checkpoint.setString(
+            CHECKPOINT_SECTION, tip.getKey(), CHECKPOINT_KEY_TIP, tip.getValue().name());
+        checkpoint.save();
+        progress.accept(
+            String.format(
+                "%s %s: %d commits walked, %d notes created",
+                project.get(), tip.getKey(), walked, crn.getNewNoteCount()));
+      }
+    }
+    return result;
+  }
+
+  private FileBasedConfig loadCheckpoint(Project.NameKey project, boolean reset)
+      throws IOException, ConfigInvalidException {
+    Files.createDirectories(checkpointDir);
+    FileBasedConfig checkpoint =
+        new FileBasedConfig(
+            checkpointDir.resolve(Url.encode(project.get()) + ".config").toFile(), FS.DETECTED);
+    if (!reset) {
+      checkpoint.load();
+    }
+    return checkpoint;
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.RestCollectionModifyView;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.GerritPersonIdent;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.account.AccountLoader;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.serviceuser.BatchCreateServiceUsers.Input;
+import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Creates several service users at once.
+ *
+ * <p>All inputs are validated before any account is created. The accounts are then created one
+ * after the other, and the service users whose accounts were created are recorded in the {@code
+ * serviceuser.db} file with a single commit.
+ */
+@RequiresCapability(CreateServiceUserCapability.ID)
+@Singleton
+class BatchCreateServiceUsers
+    implements RestCollectionModifyView<ConfigResource, ServiceUserResource, Input> {
+  static class Input {
+    List<CreateServiceUser.Input> users;
+  }
+
+  /** The result of the creation of one service user. */
+  static class Result {
+    ServiceUserInfo serviceUser;
+    String error;
+  }
+
+  private final CreateServiceUser createServiceUser;
+  private final Provider<VersionedConfigFile> configProvider;
+  private final Provider<CurrentUser> userProvider;
+  private final MetaDataUpdate.User metaDataUpdateFactory;
+  private final Project.NameKey allProjects;
+  private final ZoneId zone;
+  private final AccountLoader.Factory accountLoader;
+  private final StorageCache storageCache;
+
+  @Inject
+  BatchCreateServiceUsers(
+      CreateServiceUser createServiceUser,
+      Provider<VersionedConfigFile> configProvider,
+      Provider<CurrentUser> userProvider,
+      @GerritPersonIdent PersonIdent gerritIdent,
+      MetaDataUpdate.User metaDataUpdateFactory,
+      AllProjectsName allProjects,
+      AccountLoader.Factory accountLoader,
+      StorageCache storageCache) {
+    this.createServiceUser = createServiceUser;
+    this.configProvider = configProvider;
+    this.userProvider = userProvider;
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.allProjects = allProjects;
+    this.zone = gerritIdent.getTimeZone().toZoneId();
+    this.accountLoader = accountLoader;
+    this.storageCache = storageCache;
+  }
+
+  @Override
+  public Response<Map<String, Result>> apply(ConfigResource parentResource, Input input)
+      throws RestApiException, IOException, ConfigInvalidException, PermissionBackendException {
+    CurrentUser user = userProvider.get();
+    if (user == null || !user.isIdentifiedUser()) {
+      throw new AuthException("authentication required");
+    }
+    if (input == null || input.users == null || input.users.isEmpty()) {
+      throw new BadRequestException("users required");
+    }
+
+    Map<String, CreateServiceUser.Input> inputs = new LinkedHashMap<>();
+    List<String> errors = new ArrayList<>();
+    ServiceUserRegistry registry = storageCache.get();
+    for (CreateServiceUser.Input in : input.users) {
+      if (in == null || Strings.isNullOrEmpty(in.username)) {
+        errors.add("username required");
+        continue;
+      }
+      if (inputs.containsKey(in.username)) {
+        errors.add(String.format("%s: duplicate username", in.username));
+        continue;
+      }
+      inputs.put(in.username, in);
+      if (registry.contains(in.username)) {
+        errors.add(String.format("%s: service user already exists", in.username));
+        continue;
+      }
+      try {
+        createServiceUser.validate(in.username, in);
+      } catch (RestApiException e) {
+        errors.add(String.format("%s: %s", in.username, e.getMessage()));
+      }
+    }
+    if (!errors.isEmpty()) {
+      throw new BadRequestException(String.join("\n", errors));
+    }
+
+    Map<String, Result> results = new LinkedHashMap<>();
+    Map<String, AccountInfo> created = new LinkedHashMap<>();
+    for (Map.Entry<String, CreateServiceUser.Input> e : inputs.entrySet()) {
+      Result result = new Result();
+      results.put(e.getKey(), result);
+      try {
+        created.put(e.getKey(), createServiceUser.createAccount(e.getKey(), e.getValue()));
+      } catch (RestApiException x) {
+        result.error = x.getMessage();
+      }
+    }
+    if (created.isEmpty()) {
+      return Response.ok(results);
+    }
+
+    String creator = user.getUserName().get();
+    Account.Id creatorId = ((IdentifiedUser) user).getAccountId();
+    String creationDate = HeaderFormatter.formatDate(TimeUtil.now(), zone);
+
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile update = configProvider.get();
+      update.load(md);
+
+      Config db = update.getConfig();
+      StringBuilder msg =
+          new StringBuilder(String.format("Create %d service users\n\n", created.size()));
+      for (AccountInfo account : created.values()) {
+        CreateServiceUser.addEntry(db, account.username, creatorId, creator, creationDate);
+        msg.append("* ").append(account.username).append('\n');
+      }
+
+      md.setMessage(msg.toString());
+      update.commit(md);
+      storageCache.reload();
+    }
+
+    AccountLoader al = accountLoader.create(true);
+    AccountInfo createdBy = al.get(creatorId);
+    al.fill();
+    for (Map.Entry<String, AccountInfo> e : created.entrySet()) {
+      ServiceUserInfo info = new ServiceUserInfo(e.getValue());
+      info.createdBy = createdBy;
+      info.createdAt = creationDate;
+      results.get(e.getKey()).serviceUser = info;
+    }
+    return Response.ok(results);
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.AccountLoader;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.serviceuser.BatchRegisterServiceUsers.Input;
+import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Registers several existing accounts as service users at once.
+ *
+ * <p>All accounts are resolved and validated before anything is written, the same way as by
+ * {@link RegisterServiceUser}. The new service users are then recorded in the {@code
+ * serviceuser.db} file with a single commit, and each configured group is updated once to add all
+ * new service users as members.
+ */
+@RequiresCapability(CreateServiceUserCapability.ID)
+@Singleton
+class BatchRegisterServiceUsers implements RestModifyView<ConfigResource, Input> {
+  static class Input {
+    List<String> usernames;
+    String creator;
+    String owner;
+  }
+
+  private final RegisterServiceUser registerServiceUser;
+  private final Provider<VersionedConfigFile> configProvider;
+  private final Provider<CurrentUser> userProvider;
+  private final MetaDataUpdate.User metaDataUpdateFactory;
+  private final Project.NameKey allProjects;
+  private final AccountLoader.Factory accountLoader;
+  private final StorageCache storageCache;
+
+  @Inject
+  BatchRegisterServiceUsers(
+      RegisterServiceUser registerServiceUser,
+      Provider<VersionedConfigFile> configProvider,
+      Provider<CurrentUser> userProvider,
+      MetaDataUpdate.User metaDataUpdateFactory,
+      AllProjectsName allProjects,
+      AccountLoader.Factory accountLoader,
+      StorageCache storageCache) {
+    this.registerServiceUser = registerServiceUser;
+    this.configProvider = configProvider;
+    this.userProvider = userProvider;
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.allProjects = allProjects;
+    this.accountLoader = accountLoader;
+    this.storageCache = storageCache;
+  }
+
+  /**
+   * Registers the given accounts as service users.
+   *
+   * @return the registered service users by username, accounts that already were service users are
+   *     omitted
+   */
+  @Override
+  public Response<Map<String, ServiceUserInfo>> apply(ConfigResource parentResource, Input input)
+      throws RestApiException, IOException, ConfigInvalidException, PermissionBackendException {
+    CurrentUser requestingUser = userProvider.get();
+    if (requestingUser == null || !requestingUser.isIdentifiedUser()) {
+      throw new AuthException("authentication required");
+    }
+    if (input == null || input.usernames == null || input.usernames.isEmpty()) {
+      throw new BadRequestException("usernames required");
+    }
+
+    Map<String, Account.Id> accounts = new LinkedHashMap<>();
+    List<String> errors = new ArrayList<>();
+    for (String username : input.usernames) {
+      if (Strings.isNullOrEmpty(username) || accounts.containsKey(username)) {
+        continue;
+      }
+      try {
+        accounts.put(username, registerServiceUser.resolveAccount(requestingUser, username));
+      } catch (BadRequestException e) {
+        errors.add(String.format("%s: %s", username, e.getMessage()));
+      }
+    }
+    if (!errors.isEmpty()) {
+      throw new BadRequestException(String.join("\n", errors));
+    }
+
+    RegisterServiceUser.Registration registration =
+        registerServiceUser.prepare(requestingUser, input.creator, input.owner);
+
+    Map<String, Account.Id> registered = new LinkedHashMap<>();
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile update = configProvider.get();
+      update.load(md);
+
+      Config db = update.getConfig();
+      Set<String> serviceUsers = new HashSet<>(db.getSubsections(USER));
+      StringBuilder msg = new StringBuilder();
+      for (Map.Entry<String, Account.Id> e : accounts.entrySet()) {
+        String username = e.getKey();
+        if (!serviceUsers.add(username)) {
+          continue;
+        }
+        registration.addEntry(db, username);
+        msg.append("* ").append(username).append('\n');
+        registered.put(username, e.getValue());
+      }
+      if (registered.isEmpty()) {
+        return Response.ok(new LinkedHashMap<>());
+      }
+
+      md.setMessage(
+          String.format("Register %d service users\n\n", registered.size()) + msg.toString());
+      update.commit(md);
+      storageCache.reload();
+    }
+
+    registerServiceUser.addToGroups(ImmutableSet.copyOf(registered.values()));
+
+    AccountLoader al = accountLoader.create(true);
+    AccountInfo createdBy = al.get(registration.creatorId);
+    al.fill();
+    Map<String, ServiceUserInfo> result = new LinkedHashMap<>();
+    for (Map.Entry<String, Account.Id> e : registered.entrySet()) {
+      ServiceUserInfo info = new ServiceUserInfo(new AccountInfo(e.getValue().get()));
+      info.createdBy = createdBy;
+      info.createdAt = registration.createdAt;
+      result.put(e.getKey(), info);
+    }
+    return Response.ok(result);
+  }
+}
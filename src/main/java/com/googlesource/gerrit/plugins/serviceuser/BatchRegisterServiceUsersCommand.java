@@ -0,0 +1,93 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+@RequiresCapability(CreateServiceUserCapability.ID)
+@CommandMetaData(name = "register-batch", description = "Register Several Service Users")
+class BatchRegisterServiceUsersCommand extends SshCommand {
+
+  @Argument(
+      index = 0,
+      multiValued = true,
+      metaVar = "USERNAME",
+      usage = "names of the service users")
+  private List<String> usernames = new ArrayList<>();
+
+  @Option(name = "--stdin", usage = "read the names of the service users from stdin, one per line")
+  private boolean stdin;
+
+  @Option(
+      name = "--creator",
+      required = false,
+      metaVar = "CREATOR",
+      usage = "name of the creator of the service users")
+  private String creator;
+
+  @Option(
+      name = "--owner",
+      required = false,
+      metaVar = "OWNER",
+      usage = "group that owns the service users")
+  private String owner;
+
+  @Inject private BatchRegisterServiceUsers batchRegisterServiceUsers;
+
+  @Override
+  protected void run()
+      throws IOException, UnloggedFailure, ConfigInvalidException, PermissionBackendException {
+    BatchRegisterServiceUsers.Input input = new BatchRegisterServiceUsers.Input();
+    input.usernames = new ArrayList<>(usernames);
+    if (stdin) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty()) {
+          input.usernames.add(line);
+        }
+      }
+    }
+    input.creator = creator;
+    input.owner = owner;
+
+    Map<String, ServiceUserInfo> registered;
+    try {
+      registered = batchRegisterServiceUsers.apply(new ConfigResource(), input).value();
+    } catch (RestApiException e) {
+      throw die(e.getMessage());
+    }
+    stdout.println(String.format("%d service users registered", registered.size()));
+  }
+}
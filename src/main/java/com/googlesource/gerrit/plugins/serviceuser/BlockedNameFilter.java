@@ -14,68 +14,191 @@
 
 package com.googlesource.gerrit.plugins.serviceuser;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.annotations.PluginName;
-import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+/**
+ * Checks usernames against the {@code plugin.serviceuser.block} list.
+ *
+ * <p>The list is compiled into a set of exact names, a trie of prefixes and a single pattern that
+ * combines all regular expressions, so that the cost of a check doesn't grow with the number of
+ * rules. The compiled rules are replaced at once when the list is reloaded.
+ */
 @Singleton
 public class BlockedNameFilter {
-  private final PluginConfig cfg;
-  private final Set<String> blockedExactNames = new HashSet<>();
-  private final List<String> blockedNamePrefixes = new ArrayList<>();
-  private final List<Pattern> blockedRegexNames = new ArrayList<>();
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final int REGEX_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+  private final PluginConfigFactory cfgFactory;
+  private final String pluginName;
+
+  private volatile Rules rules;
 
   @Inject
   public BlockedNameFilter(PluginConfigFactory cfgFactory, @PluginName String pluginName) {
-    this.cfg = cfgFactory.getFromGerritConfig(pluginName);
-    parseConfig();
+    this.cfgFactory = cfgFactory;
+    this.pluginName = pluginName;
+    reload();
   }
 
   public boolean isBlocked(String username) {
-    username = username.toLowerCase();
-    return isBlockedByExactName(username)
-        || isBlockedByWildcard(username)
-        || isBlockedByRegex(username);
+    return rules.isBlocked(username.toLowerCase());
   }
 
-  private void parseConfig() {
-    for (String s : cfg.getStringList("block")) {
-      if (s.startsWith("^")) {
-        blockedRegexNames.add(Pattern.compile(s, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
-      } else if (s.endsWith("*")) {
-        blockedNamePrefixes.add(s.substring(0, s.length() - 1).toLowerCase());
-      } else {
-        blockedExactNames.add(s.toLowerCase());
-      }
-    }
+  /**
+   * Compiles the rules from the current plugin configuration. Invalid regular expressions are
+   * logged and ignored, so that an invalid entry doesn't prevent the plugin from loading.
+   */
+  public void reload() {
+    rules = new Rules(cfgFactory.getFromGerritConfig(pluginName).getStringList("block"), false);
   }
 
-  private boolean isBlockedByExactName(String username) {
-    return blockedExactNames.contains(username);
+  /**
+   * Compiles the given block list, e.g. to validate it before it is saved.
+   *
+   * @throws PatternSyntaxException if one of the regular expressions is invalid
+   */
+  static Rules compile(String[] blockedNames) {
+    return new Rules(blockedNames, true);
   }
 
-  private boolean isBlockedByWildcard(String username) {
-    for (String prefix : blockedNamePrefixes) {
-      if (username.startsWith(prefix)) {
+  /** Replaces the rules by rules that were compiled by {@link #compile(String[])}. */
+  void set(Rules rules) {
+    this.rules = rules;
+  }
+
+  static class Rules {
+    private final ImmutableSet<String> exactNames;
+    private final PrefixTrie prefixes = new PrefixTrie();
+
+    /** All regular expressions without capturing groups, combined into one alternation. */
+    @Nullable private final Pattern combinedRegex;
+
+    /**
+     * Regular expressions with capturing groups, which are matched separately since combining them
+     * would renumber their back references.
+     */
+    private final ImmutableList<Pattern> otherRegexes;
+
+    private Rules(String[] blockedNames, boolean strict) {
+      ImmutableSet.Builder<String> exact = ImmutableSet.builder();
+      List<Pattern> combinable = new ArrayList<>();
+      ImmutableList.Builder<Pattern> other = ImmutableList.builder();
+      for (String s : blockedNames) {
+        if (s.startsWith("^")) {
+          Pattern p;
+          try {
+            p = Pattern.compile(s, REGEX_FLAGS);
+          } catch (PatternSyntaxException e) {
+            if (strict) {
+              throw e;
+            }
+            logger.atSevere().withCause(e).log("Ignoring invalid blocked name '%s'", s);
+            continue;
+          }
+          if (p.matcher("").groupCount() == 0) {
+            combinable.add(p);
+          } else {
+            other.add(p);
+          }
+        } else if (s.endsWith("*")) {
+          prefixes.add(s.substring(0, s.length() - 1).toLowerCase());
+        } else {
+          exact.add(s.toLowerCase());
+        }
+      }
+      this.exactNames = exact.build();
+      this.combinedRegex = combine(combinable, other);
+      this.otherRegexes = other.build();
+    }
+
+    /**
+     * Combines the given regular expressions into one alternation. If they can't be combined, e.g.
+     * because a comment in a regular expression with the {@code (?x)} flag swallows the closing
+     * parenthesis, they are added to {@code other} to be matched separately.
+     */
+    @Nullable
+    private static Pattern combine(List<Pattern> combinable, ImmutableList.Builder<Pattern> other) {
+      if (combinable.isEmpty()) {
+        return null;
+      }
+      StringBuilder regex = new StringBuilder();
+      for (Pattern p : combinable) {
+        if (regex.length() > 0) {
+          regex.append('|');
+        }
+        regex.append("(?:").append(p.pattern()).append(')');
+      }
+      try {
+        return Pattern.compile(regex.toString(), REGEX_FLAGS);
+      } catch (PatternSyntaxException e) {
+        logger.atWarning().withCause(e).log(
+            "Cannot combine blocked names, matching %d regular expressions separately",
+            combinable.size());
+        other.addAll(combinable);
+        return null;
+      }
+    }
+
+    boolean isBlocked(String username) {
+      if (exactNames.contains(username) || prefixes.matchesPrefixOf(username)) {
         return true;
       }
+      if (combinedRegex != null && combinedRegex.matcher(username).find()) {
+        return true;
+      }
+      for (Pattern p : otherRegexes) {
+        if (p.matcher(username).find()) {
+          return true;
+        }
+      }
+      return false;
     }
-    return false;
   }
 
-  private boolean isBlockedByRegex(String username) {
-    for (Pattern p : blockedRegexNames) {
-      if (p.matcher(username).find()) {
-        return true;
+  private static class PrefixTrie {
+    private static class Node {
+      final Map<Character, Node> children = new HashMap<>();
+      boolean terminal;
+    }
+
+    private final Node root = new Node();
+
+    void add(String prefix) {
+      Node n = root;
+      for (int i = 0; i < prefix.length(); i++) {
+        n = n.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+      }
+      n.terminal = true;
+    }
+
+    /** Whether any of the prefixes in this trie is a prefix of the given string. */
+    boolean matchesPrefixOf(String s) {
+      Node n = root;
+      for (int i = 0; ; i++) {
+        if (n.terminal) {
+          return true;
+        }
+        if (i == s.length()) {
+          return false;
+        }
+        n = n.children.get(s.charAt(i));
+        if (n == null) {
+          return false;
+        }
       }
     }
-    return false;
   }
 }
@@ -16,22 +16,37 @@ package com.googlesource.gerrit.plugins.serviceuser;
 
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.data.RefUpdateAttribute;
 import com.google.gerrit.server.events.Event;
 import com.google.gerrit.server.events.EventListener;
 import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.inject.Inject;
+import java.io.IOException;
+import java.util.Objects;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 
 class CacheInvalidator implements EventListener {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   private final AllProjectsName allProjects;
   private final StorageCache storageCache;
+  private final GitRepositoryManager repoManager;
+  private final String fileName;
 
   @Inject
-  CacheInvalidator(AllProjectsName allProjects, StorageCache storageCache) {
+  CacheInvalidator(
+      AllProjectsName allProjects,
+      StorageCache storageCache,
+      GitRepositoryManager repoManager,
+      @PluginName String pluginName) {
     this.allProjects = allProjects;
     this.storageCache = storageCache;
+    this.repoManager = repoManager;
+    this.fileName = StorageCache.fileName(pluginName);
   }
 
   @Override
@@ -41,11 +56,26 @@ class CacheInvalidator implements EventListener {
     if (event.getType().equals(RefUpdatedEvent.TYPE)) {
       RefUpdatedEvent refUpdatedEvent = (RefUpdatedEvent) event;
       if (refUpdatedEvent.getProjectNameKey().get().equals(allProjects.get())
-          && refUpdatedEvent.getRefName().equals(RefNames.REFS_CONFIG)) {
+          && refUpdatedEvent.getRefName().equals(RefNames.REFS_CONFIG)
+          && isServiceUserDbModified(refUpdatedEvent.refUpdate.get())) {
         logger.atFine().log(
-            "%s ref update triggered, invalidate serviceuser cache", allProjects.get());
-        storageCache.invalidate();
+            "%s ref update triggered, refresh serviceuser cache", allProjects.get());
+        storageCache.refresh();
       }
     }
   }
+
+  private boolean isServiceUserDbModified(RefUpdateAttribute refUpdate) {
+    try (Repository git = repoManager.openRepository(allProjects)) {
+      return !Objects.equals(
+          StorageCache.getBlobId(git, ObjectId.fromString(refUpdate.oldRev), fileName),
+          StorageCache.getBlobId(git, ObjectId.fromString(refUpdate.newRev), fileName));
+    } catch (IOException | IllegalArgumentException e) {
+      // The commits may not be available yet, e.g. if the event was received
+      // from another Gerrit instance, hence be safe and refresh the cache.
+      logger.atFine().withCause(e).log(
+          "Cannot compare %s between %s and %s", fileName, refUpdate.oldRev, refUpdate.newRev);
+      return true;
+    }
+  }
 }
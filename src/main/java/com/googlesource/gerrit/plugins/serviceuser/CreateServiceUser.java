@@ -17,6 +17,7 @@ package com.googlesource.gerrit.plugins.serviceuser;
 import static com.google.gerrit.server.api.ApiUtil.asRestApiException;
 
 import com.google.common.base.Strings;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.annotations.PluginName;
@@ -42,18 +43,15 @@ import com.google.gerrit.server.git.meta.MetaDataUpdate;
 import com.google.gerrit.server.git.meta.VersionedConfigFile;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.restapi.account.CreateAccount;
+import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.Input;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -80,7 +78,7 @@ public class CreateServiceUser
   private final Provider<CurrentUser> userProvider;
   private final MetaDataUpdate.User metaDataUpdateFactory;
   private final Project.NameKey allProjects;
-  private final DateFormat rfc2822DateFormatter;
+  private final ZoneId zone;
   private final Provider<GetConfig> getConfig;
   private final AccountLoader.Factory accountLoader;
   private final StorageCache storageCache;
@@ -106,9 +104,7 @@ public class CreateServiceUser
     this.userProvider = userProvider;
     this.metaDataUpdateFactory = metaDataUpdateFactory;
     this.allProjects = allProjects;
-    this.rfc2822DateFormatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
-    this.rfc2822DateFormatter.setCalendar(
-        Calendar.getInstance(gerritIdent.getTimeZone(), Locale.US));
+    this.zone = gerritIdent.getTimeZone().toZoneId();
     this.getConfig = getConfig;
     this.accountLoader = accountLoader;
     this.storageCache = storageCache;
@@ -132,6 +128,36 @@ public class CreateServiceUser
       throw new BadRequestException("username must match URL");
     }
 
+    validate(username, input);
+    AccountInfo response = createAccount(username, input);
+
+    String creator = user.getUserName().get();
+    Account.Id creatorId = ((IdentifiedUser) user).getAccountId();
+    String creationDate = HeaderFormatter.formatDate(TimeUtil.now(), zone);
+
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile update = configProvider.get();
+      update.load(md);
+
+      addEntry(update.getConfig(), response.username, creatorId, creator, creationDate);
+
+      md.setMessage("Create service user '" + username + "'\n");
+      update.commit(md);
+      storageCache.reload();
+    }
+    ServiceUserInfo info = new ServiceUserInfo(response);
+    AccountLoader al = accountLoader.create(true);
+    info.createdBy = al.get(creatorId);
+    al.fill();
+    info.createdAt = creationDate;
+    return Response.created(info);
+  }
+
+  /**
+   * Checks whether a service user can be created from the given input. Doesn't check whether the
+   * username is already taken, this is detected when the account is created.
+   */
+  void validate(String username, Input input) throws RestApiException {
     if (input.sshKey != null && !SshKeyValidator.validateFormat(input.sshKey)) {
       throw new BadRequestException("sshKey invalid.");
     }
@@ -153,41 +179,30 @@ public class CreateServiceUser
         throw new ResourceConflictException("email not allowed");
       }
     }
+  }
 
+  /** Creates the account of a service user from an input that was validated before. */
+  AccountInfo createAccount(String username, Input input) throws RestApiException {
     AccountInput in = new ServiceUserInput(username, input.email, input.sshKey);
     in.groups = Arrays.asList(cfg.getStringList("group"));
-
-    AccountInfo response;
     try {
-      response = createAccount.apply(IdString.fromDecoded(username), in).value();
+      return createAccount.apply(IdString.fromDecoded(username), in).value();
     } catch (Exception e) {
       throw asRestApiException("Cannot create account", e);
     }
+  }
 
-    String creator = user.getUserName().get();
-    Account.Id creatorId = ((IdentifiedUser) user).getAccountId();
-    String creationDate = rfc2822DateFormatter.format(new Date());
-
-    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
-      VersionedConfigFile update = configProvider.get();
-      update.load(md);
-
-      Config db = update.getConfig();
-      db.setInt(USER, response.username, KEY_CREATOR_ID, creatorId.get());
-      if (creator != null) {
-        db.setString(USER, response.username, KEY_CREATED_BY, creator);
-      }
-      db.setString(USER, response.username, KEY_CREATED_AT, creationDate);
-
-      md.setMessage("Create service user '" + username + "'\n");
-      update.commit(md);
-      storageCache.invalidate();
+  /** Adds the entry of a newly created service user to the {@code serviceuser.db} file. */
+  static void addEntry(
+      Config db,
+      String username,
+      Account.Id creatorId,
+      @Nullable String creator,
+      String createdAt) {
+    db.setInt(USER, username, KEY_CREATOR_ID, creatorId.get());
+    if (creator != null) {
+      db.setString(USER, username, KEY_CREATED_BY, creator);
     }
-    ServiceUserInfo info = new ServiceUserInfo(response);
-    AccountLoader al = accountLoader.create(true);
-    info.createdBy = al.get(creatorId);
-    al.fill();
-    info.createdAt = creationDate;
-    return Response.created(info);
+    db.setString(USER, username, KEY_CREATED_AT, createdAt);
   }
 }
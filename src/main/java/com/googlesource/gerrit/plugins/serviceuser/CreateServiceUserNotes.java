@@ -19,16 +19,24 @@ import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.eclipse.jgit.lib.Constants.OBJ_COMMIT;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.common.AccountInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.GerritPersonIdent;
 import com.google.gerrit.server.config.AnonymousCowardName;
 import com.google.gerrit.server.git.NotesBranchUtil;
+import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -49,18 +57,24 @@ class CreateServiceUserNotes {
     CreateServiceUserNotes create(Project.NameKey project, Repository git);
   }
 
-  private static final String REFS_NOTES_SERVICEUSER = "refs/notes/serviceuser";
+  static final String REFS_NOTES_SERVICEUSER = "refs/notes/serviceuser";
 
   private final PersonIdent gerritServerIdent;
   private final NotesBranchUtil.Factory notesBranchUtilFactory;
   private final ServiceUserResolver serviceUserResolver;
-  private final @AnonymousCowardName String anonymousCowardName;
+  private final HeaderFormatter headerFormatter;
   private final Project.NameKey project;
   private final Repository git;
 
+  private final Instant date = TimeUtil.now();
+  private final StringBuilder noteBuffer = new StringBuilder();
+  private final Map<String, Optional<ServiceUserInfo>> serviceUsers = new HashMap<>();
+  private final Map<String, ObjectId> noteContents = new HashMap<>();
+
   private ObjectInserter inserter;
   private NoteMap serviceUserNotes;
   private StringBuilder message;
+  private int newNotes;
 
   @Inject
   CreateServiceUserNotes(
@@ -73,7 +87,8 @@ class CreateServiceUserNotes {
     this.gerritServerIdent = gerritIdent;
     this.notesBranchUtilFactory = notesBranchUtilFactory;
     this.serviceUserResolver = serviceUserResolver;
-    this.anonymousCowardName = anonymousCowardName;
+    this.headerFormatter =
+        new HeaderFormatter(gerritIdent.getTimeZone().toZoneId(), anonymousCowardName);
     this.project = project;
     this.git = git;
   }
@@ -94,8 +109,8 @@ class CreateServiceUserNotes {
         rw.markStart(n);
         if (n.getParentCount() == 1 && n.getParent(0).equals(oldObjectId)) {
           rw.markUninteresting(rw.parseCommit(oldObjectId));
-        } else {
-          markUninteresting(git, branch, rw, oldObjectId);
+        } else if (!markUninteresting(git, branch, rw, n, oldObjectId)) {
+          return;
         }
       } catch (Exception e) {
         log.error(e.getMessage(), e);
@@ -103,9 +118,9 @@ class CreateServiceUserNotes {
       }
 
       for (RevCommit c : rw) {
-        ServiceUserInfo serviceUser = serviceUserResolver.getAsServiceUser(c.getCommitterIdent());
+        ServiceUserInfo serviceUser = getServiceUser(c.getCommitterIdent());
         if (serviceUser != null) {
-          ObjectId content = createNoteContent(branch, serviceUser);
+          ObjectId content = getNoteContent(branch, serviceUser);
           getNotes().set(c, content);
           getMessage().append("* ").append(c.getShortMessage()).append("\n");
         }
@@ -113,6 +128,59 @@ class CreateServiceUserNotes {
     }
   }
 
+  /**
+   * Creates notes for the commits in the history of the given tip that don't have a note yet, e.g.
+   * for commits that were pushed before the creation of notes was enabled.
+   *
+   * <p>The notes must be written by {@link #commitNewNotes()}.
+   *
+   * @param branch the branch for which the notes are created
+   * @param tip the commit from which the history is walked
+   * @param uninteresting commits whose history is not walked, e.g. because it was already processed
+   * @return the number of walked commits
+   */
+  int createNotesForHistory(String branch, ObjectId tip, Iterable<ObjectId> uninteresting)
+      throws IOException, RestApiException {
+    int walked = 0;
+    try (RevWalk rw = new RevWalk(git)) {
+      RevObject obj = rw.peel(rw.parseAny(tip));
+      if (obj.getType() != OBJ_COMMIT) {
+        return walked;
+      }
+      rw.markStart((RevCommit) obj);
+      for (ObjectId id : uninteresting) {
+        try {
+          rw.markUninteresting(rw.parseCommit(id));
+        } catch (IOException e) {
+          // skip if not parseable as a commit
+        }
+      }
+
+      Ref notesRef = git.exactRef(REFS_NOTES_SERVICEUSER);
+      NoteMap existingNotes =
+          notesRef != null
+              ? NoteMap.read(rw.getObjectReader(), rw.parseCommit(notesRef.getObjectId()))
+              : NoteMap.newEmptyMap();
+      for (RevCommit c : rw) {
+        walked++;
+        if (existingNotes.contains(c)) {
+          continue;
+        }
+        ServiceUserInfo serviceUser = getServiceUser(c.getCommitterIdent());
+        if (serviceUser != null) {
+          getNotes().set(c, getNoteContent(branch, serviceUser));
+          newNotes++;
+        }
+      }
+    }
+    return walked;
+  }
+
+  /** Returns the number of notes created by {@link #createNotesForHistory}. */
+  int getNewNoteCount() {
+    return newNotes;
+  }
+
   void commitNotes() throws IOException {
     try {
       if (serviceUserNotes == null) {
@@ -131,24 +199,100 @@ class CreateServiceUserNotes {
     }
   }
 
-  private void markUninteresting(Repository git, String branch, RevWalk rw, ObjectId oldObjectId)
+  /**
+   * Commits the notes created by {@link #createNotesForHistory}. Notes for commits that got a note
+   * in the meantime are skipped.
+   */
+  void commitNewNotes() throws IOException {
+    try {
+      if (serviceUserNotes == null) {
+        return;
+      }
+
+      notesBranchUtilFactory
+          .create(project, git, inserter)
+          .commitNewNotes(
+              serviceUserNotes,
+              REFS_NOTES_SERVICEUSER,
+              gerritServerIdent,
+              String.format("Backfill notes for %d service user commits", newNotes));
+    } finally {
+      if (inserter != null) {
+        inserter.close();
+      }
+    }
+  }
+
+  /**
+   * Marks the commits that are already reachable from other branches or tags as uninteresting.
+   *
+   * <p>Only {@code refs/heads/} and {@code refs/tags/} are scanned, so that the change refs, which
+   * make up most of the refs in large repositories, are not even listed. Refs that point to the
+   * same commit are only parsed once.
+   *
+   * @return {@code false} if the new commit is already the tip of another branch or tag, and hence
+   *     there are no new commits
+   */
+  private boolean markUninteresting(
+      Repository git, String branch, RevWalk rw, RevCommit newCommit, ObjectId oldObjectId)
       throws IOException {
-    for (Ref r : git.getRefDatabase().getRefs()) {
+    Set<ObjectId> tips = new HashSet<>();
+    if (!ObjectId.zeroId().equals(oldObjectId)) {
+      // For the updated branch the oldObjectId is the tip of uninteresting
+      // commit history
+      tips.add(oldObjectId);
+    }
+    for (Ref r : git.getRefDatabase().getRefsByPrefix(Constants.R_HEADS, Constants.R_TAGS)) {
+      if (r.getName().equals(branch) || r.getObjectId() == null) {
+        continue;
+      }
+      ObjectId tip = r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
+      if (tip.equals(newCommit)) {
+        return false;
+      }
+      tips.add(tip);
+    }
+
+    for (ObjectId tip : tips) {
       try {
-        if (r.getName().equals(branch)) {
-          if (!ObjectId.zeroId().equals(oldObjectId)) {
-            // For the updated branch the oldObjectId is the tip of uninteresting
-            // commit history
-            rw.markUninteresting(rw.parseCommit(oldObjectId));
-          }
-        } else if (r.getName().startsWith(Constants.R_HEADS)
-            || r.getName().startsWith(Constants.R_TAGS)) {
-          rw.markUninteresting(rw.parseCommit(r.getObjectId()));
-        }
+        rw.markUninteresting(rw.parseCommit(tip));
       } catch (IOException e) {
         // skip if not parseable as a commit
       }
     }
+    return true;
+  }
+
+  /**
+   * Returns the service user with the given committer identity. The result is memoized, since
+   * usually most commits in a batch have the same committer.
+   */
+  @Nullable
+  private ServiceUserInfo getServiceUser(PersonIdent committer) throws RestApiException {
+    String identity = committer.getName() + " <" + committer.getEmailAddress() + ">";
+    Optional<ServiceUserInfo> serviceUser = serviceUsers.get(identity);
+    if (serviceUser == null) {
+      serviceUser = Optional.ofNullable(serviceUserResolver.getAsServiceUser(committer));
+      serviceUsers.put(identity, serviceUser);
+    }
+    return serviceUser.orElse(null);
+  }
+
+  /**
+   * Returns the ID of the note blob for commits of the given service user on the given branch.
+   *
+   * <p>All these notes have the same content, hence the blob is created and inserted only once
+   * per batch and then shared by all commits it annotates.
+   */
+  private ObjectId getNoteContent(String branch, ServiceUserInfo serviceUser)
+      throws IOException, RestApiException {
+    String key = branch + ":" + serviceUser._accountId;
+    ObjectId content = noteContents.get(key);
+    if (content == null) {
+      content = createNoteContent(branch, serviceUser);
+      noteContents.put(key, content);
+    }
+    return content;
   }
 
   private ObjectId createNoteContent(String branch, ServiceUserInfo serviceUser)
@@ -159,15 +303,16 @@ class CreateServiceUserNotes {
 
   private String createServiceUserNote(String branch, ServiceUserInfo serviceUser)
       throws RestApiException, RuntimeException {
-    HeaderFormatter fmt = new HeaderFormatter(gerritServerIdent.getTimeZone(), anonymousCowardName);
-    fmt.appendDate();
-    fmt.append("Project", project.get());
-    fmt.append("Branch", branch);
-    fmt.appendUser(KEY_CREATED_BY, serviceUser.createdBy);
+    StringBuilder sb = noteBuffer;
+    sb.setLength(0);
+    headerFormatter.appendDate(sb, date);
+    headerFormatter.append(sb, "Project", project.get());
+    headerFormatter.append(sb, "Branch", branch);
+    headerFormatter.appendUser(sb, KEY_CREATED_BY, serviceUser.createdBy);
     for (AccountInfo owner : serviceUserResolver.listActiveOwners(serviceUser)) {
-      fmt.appendUser(KEY_OWNER, owner);
+      headerFormatter.appendUser(sb, KEY_OWNER, owner);
     }
-    return fmt.toString();
+    return sb.toString();
   }
 
   private ObjectInserter getInserter() {
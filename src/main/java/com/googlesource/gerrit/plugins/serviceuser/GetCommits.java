@@ -0,0 +1,138 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.common.CommitInfo;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.CommonConverters;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.restapi.project.CommitsCollection;
+import com.google.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Lists the commits of a service user in a project, as recorded by the service user notes.
+ *
+ * <p>The commits are looked up in the {@link ServiceUserCommitIndex}. Only commits that the caller
+ * can read are returned, the same way as by the commit endpoints of Gerrit, i.e. the commit must be
+ * reachable from a ref that is visible to the caller.
+ */
+class GetCommits implements RestReadView<ServiceUserResource> {
+  private final ServiceUserCommitIndex commitIndex;
+  private final GitRepositoryManager repoManager;
+  private final ProjectCache projectCache;
+  private final PermissionBackend permissionBackend;
+  private final CommitsCollection commitsCollection;
+
+  @Option(
+      name = "--project",
+      aliases = {"-p"},
+      metaVar = "PROJECT",
+      usage = "project in which the commits are listed")
+  private String project;
+
+  @Option(
+      name = "--limit",
+      aliases = {"-n"},
+      metaVar = "CNT",
+      usage = "maximum number of commits to list")
+  private int limit;
+
+  @Option(
+      name = "--start",
+      aliases = {"-S"},
+      metaVar = "CNT",
+      usage = "number of commits to skip")
+  private int start;
+
+  @Inject
+  GetCommits(
+      ServiceUserCommitIndex commitIndex,
+      GitRepositoryManager repoManager,
+      ProjectCache projectCache,
+      PermissionBackend permissionBackend,
+      CommitsCollection commitsCollection) {
+    this.commitIndex = commitIndex;
+    this.repoManager = repoManager;
+    this.projectCache = projectCache;
+    this.permissionBackend = permissionBackend;
+    this.commitsCollection = commitsCollection;
+  }
+
+  @Override
+  public Response<List<CommitInfo>> apply(ServiceUserResource rsrc)
+      throws IOException, RestApiException, PermissionBackendException {
+    if (Strings.isNullOrEmpty(project)) {
+      throw new BadRequestException("project is required");
+    }
+    Project.NameKey projectName = Project.nameKey(project);
+    Optional<ProjectState> projectState = projectCache.get(projectName);
+    if (!projectState.isPresent()) {
+      throw new BadRequestException(String.format("project %s not found", project));
+    }
+    permissionBackend.currentUser().project(projectName).check(ProjectPermission.ACCESS);
+
+    List<CommitInfo> commits = new ArrayList<>();
+    try (Repository git = repoManager.openRepository(projectName);
+        RevWalk rw = new RevWalk(git)) {
+      int skipped = 0;
+      for (ServiceUserCommitIndex.IndexedCommit indexed :
+          commitIndex.getCommits(projectName, git, rsrc.getUser().getAccountId())) {
+        if (limit > 0 && commits.size() == limit) {
+          break;
+        }
+        RevCommit c;
+        try {
+          c = rw.parseCommit(indexed.commitId);
+        } catch (MissingObjectException e) {
+          // The commit was garbage collected after it was indexed.
+          continue;
+        }
+        if (!commitsCollection.canRead(projectState.get(), git, c)) {
+          continue;
+        }
+        if (skipped < start) {
+          skipped++;
+          continue;
+        }
+        CommitInfo info = new CommitInfo();
+        info.commit = c.name();
+        info.author = CommonConverters.toGitPerson(c.getAuthorIdent());
+        info.committer = CommonConverters.toGitPerson(c.getCommitterIdent());
+        info.subject = c.getShortMessage();
+        commits.add(info);
+      }
+    }
+    return Response.ok(commits);
+  }
+}
@@ -14,9 +14,7 @@
 
 package com.googlesource.gerrit.plugins.serviceuser;
 
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_OWNER;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
-
+import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.GroupDescription;
 import com.google.gerrit.extensions.common.GroupInfo;
 import com.google.gerrit.extensions.restapi.IdString;
@@ -32,6 +30,7 @@ import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Optional;
 
 @Singleton
 class GetOwner implements RestReadView<ServiceUserResource> {
@@ -56,11 +55,16 @@ class GetOwner implements RestReadView<ServiceUserResource> {
   public Response<GroupInfo> apply(ServiceUserResource rsrc)
       throws IOException, RestApiException, PermissionBackendException {
     try (ManualRequestContext ctx = requestContext.open()) {
-      String owner =
-          storageCache.get().getString(USER, rsrc.getUser().getUserName().get(), KEY_OWNER);
-      if (owner != null) {
+      Optional<AccountGroup.UUID> owner =
+          storageCache
+              .get()
+              .get(rsrc.getUser().getUserName().get())
+              .flatMap(ServiceUserRegistry.Entry::owner);
+      if (owner.isPresent()) {
         GroupDescription.Basic group =
-            groups.parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner)).getGroup();
+            groups
+                .parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner.get().get()))
+                .getGroup();
         return Response.<GroupInfo>ok(json.format(group));
       }
     }
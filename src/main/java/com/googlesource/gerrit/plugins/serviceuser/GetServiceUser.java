@@ -15,12 +15,8 @@
 package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.gerrit.server.api.ApiUtil.asRestApiException;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATED_AT;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATOR_ID;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
-import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.common.AccountInfo;
 import com.google.gerrit.extensions.common.GroupInfo;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
@@ -34,7 +30,6 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
-import org.eclipse.jgit.lib.Config;
 
 @Singleton
 public class GetServiceUser implements RestReadView<ServiceUserResource> {
@@ -59,10 +54,8 @@ public class GetServiceUser implements RestReadView<ServiceUserResource> {
   public Response<ServiceUserInfo> apply(ServiceUserResource rsrc)
       throws IOException, RestApiException, PermissionBackendException {
     String username = rsrc.getUser().getUserName().orElseThrow(ResourceNotFoundException::new);
-    Config db = storageCache.get();
-    if (!db.getSubsections(USER).contains(username)) {
-      throw new ResourceNotFoundException(username);
-    }
+    ServiceUserRegistry.Entry entry =
+        storageCache.get().get(username).orElseThrow(() -> new ResourceNotFoundException(username));
 
     ServiceUserInfo info;
     try {
@@ -72,9 +65,9 @@ public class GetServiceUser implements RestReadView<ServiceUserResource> {
     }
 
     AccountLoader al = accountLoader.create(true);
-    info.createdBy = al.get(Account.id(db.getInt(USER, username, KEY_CREATOR_ID, -1)));
+    info.createdBy = al.get(entry.creatorId());
     al.fill();
-    info.createdAt = db.getString(USER, username, KEY_CREATED_AT);
+    info.createdAt = entry.createdAt();
     info.inactive = !rsrc.getUser().getAccount().isActive() ? true : null;
 
     Response<GroupInfo> response = getOwner.apply(rsrc);
@@ -16,40 +16,52 @@ package com.googlesource.gerrit.plugins.serviceuser;
 
 import com.google.common.base.Strings;
 import com.google.gerrit.extensions.common.AccountInfo;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
-import java.util.TimeZone;
 
+/**
+ * Formats the header lines of the Git notes for service user commits.
+ *
+ * <p>Instances are immutable and can be shared. All lines are appended to a buffer that is
+ * supplied by the caller.
+ */
 class HeaderFormatter {
-  private final StringBuilder sb = new StringBuilder();
-  private final DateFormat rfc2822DateFormatter;
+  /** Format of the dates in the Git notes and in the {@code serviceuser.db} file (RFC 2822). */
+  static final DateTimeFormatter RFC_2822_FORMAT =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
+
+  static String formatDate(Instant date, ZoneId zone) {
+    return RFC_2822_FORMAT.format(date.atZone(zone));
+  }
+
+  private final ZoneId zone;
   private final String anonymousCowardName;
 
-  HeaderFormatter(TimeZone tz, String anonymousCowardName) {
+  HeaderFormatter(ZoneId zone, String anonymousCowardName) {
+    this.zone = zone;
     this.anonymousCowardName = anonymousCowardName;
-    rfc2822DateFormatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
-    rfc2822DateFormatter.setCalendar(Calendar.getInstance(tz, Locale.US));
   }
 
-  void append(String key, String value) {
+  void append(StringBuilder sb, String key, String value) {
     sb.append(key).append(": ").append(value).append("\n");
   }
 
-  void appendDate() {
-    sb.append("Date: ").append(rfc2822DateFormatter.format(new Date())).append("\n");
+  void appendDate(StringBuilder sb, Instant date) {
+    sb.append("Date: ");
+    RFC_2822_FORMAT.formatTo(date.atZone(zone), sb);
+    sb.append("\n");
   }
 
-  void appendUser(String key, AccountInfo user) {
+  void appendUser(StringBuilder sb, String key, AccountInfo user) {
     sb.append(key);
     sb.append(": ");
-    appendUserData(user);
+    appendUserData(sb, user);
     sb.append("\n");
   }
 
-  private void appendUserData(AccountInfo user) {
+  private void appendUserData(StringBuilder sb, AccountInfo user) {
     boolean needSpace = false;
     boolean wroteData = false;
 
@@ -71,9 +83,4 @@ class HeaderFormatter {
       sb.append(anonymousCowardName).append(" #").append(user._accountId);
     }
   }
-
-  @Override
-  public String toString() {
-    return sb.toString();
-  }
 }
@@ -15,49 +15,147 @@
 package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.gerrit.server.api.ApiUtil.asRestApiException;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
+import static com.google.gerrit.server.permissions.GlobalPermission.ADMINISTRATE_SERVER;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.extensions.common.GroupInfo;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.IdString;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.account.AccountControl;
+import com.google.gerrit.server.account.AccountLoader;
 import com.google.gerrit.server.account.AccountState;
 import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.restapi.group.GroupJson;
+import com.google.gerrit.server.restapi.group.GroupsCollection;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.eclipse.jgit.errors.ConfigInvalidException;
-import org.eclipse.jgit.lib.Config;
+import org.kohsuke.args4j.Option;
 
-@Singleton
+/**
+ * Lists the service users that are visible to the caller.
+ *
+ * <p>The filters are evaluated against the service user registry, before any account or owner
+ * data is loaded. Accounts are then looked up in batches until the requested page is filled, one
+ * {@link AccountLoader} is filled for the service users and creators on the page, and each distinct
+ * owner group on the page is resolved and formatted only once.
+ */
 class ListServiceUsers implements RestReadView<ConfigResource> {
+  private static final int ACCOUNT_BATCH_SIZE = 100;
+
   private final Provider<CurrentUser> userProvider;
   private final AccountCache accountCache;
-  private final Provider<ServiceUserCollection> serviceUsers;
-  private final Provider<GetServiceUser> getServiceUser;
+  private final AccountControl.Factory accountControlFactory;
+  private final AccountLoader.Factory accountLoader;
+  private final GroupsCollection groups;
+  private final GroupJson groupJson;
+  private final PermissionBackend permissionBackend;
+  private final OneOffRequestContext requestContext;
   private final StorageCache storageCache;
 
+  @Option(
+      name = "--limit",
+      aliases = {"-n"},
+      metaVar = "CNT",
+      usage = "maximum number of service users to list")
+  private int limit;
+
+  @Option(
+      name = "--start",
+      aliases = {"-S"},
+      metaVar = "CNT",
+      usage = "number of service users to skip")
+  private int start;
+
+  @Option(
+      name = "--prefix",
+      aliases = {"-p"},
+      metaVar = "PREFIX",
+      usage = "match service user names starting with the given prefix")
+  private String prefix;
+
+  @Option(
+      name = "--owner",
+      aliases = {"-o"},
+      metaVar = "GROUP",
+      usage = "only list service users owned by the given group")
+  private String owner;
+
+  @Option(
+      name = "--creator",
+      aliases = {"-c"},
+      metaVar = "CREATOR",
+      usage = "only list service users created by the given username or account ID")
+  private String creator;
+
+  @Option(name = "--active", usage = "only list active service users")
+  private boolean active;
+
+  @Option(name = "--inactive", usage = "only list inactive service users")
+  private boolean inactive;
+
+  @Option(
+      name = "--created-after",
+      metaVar = "DATE",
+      usage = "only list service users created at or after the given date (yyyy-MM-dd or ISO-8601)")
+  private String createdAfter;
+
+  @Option(
+      name = "--created-before",
+      metaVar = "DATE",
+      usage = "only list service users created before the given date (yyyy-MM-dd or ISO-8601)")
+  private String createdBefore;
+
   @Inject
   ListServiceUsers(
       Provider<CurrentUser> userProvider,
       AccountCache accountCache,
-      Provider<ServiceUserCollection> serviceUsers,
-      Provider<GetServiceUser> getServiceUser,
+      AccountControl.Factory accountControlFactory,
+      AccountLoader.Factory accountLoader,
+      GroupsCollection groups,
+      GroupJson groupJson,
+      PermissionBackend permissionBackend,
+      OneOffRequestContext requestContext,
       StorageCache storageCache) {
     this.userProvider = userProvider;
     this.accountCache = accountCache;
-    this.serviceUsers = serviceUsers;
-    this.getServiceUser = getServiceUser;
+    this.accountControlFactory = accountControlFactory;
+    this.accountLoader = accountLoader;
+    this.groups = groups;
+    this.groupJson = groupJson;
+    this.permissionBackend = permissionBackend;
+    this.requestContext = requestContext;
     this.storageCache = storageCache;
   }
 
@@ -68,30 +166,220 @@ class ListServiceUsers implements RestReadView<ConfigResource> {
     if (user == null || !user.isIdentifiedUser()) {
       throw new AuthException("Authentication required");
     }
+    if (limit < 0 || start < 0) {
+      throw new BadRequestException("limit and start must not be negative");
+    }
+    if (active && inactive) {
+      throw new BadRequestException("active and inactive are mutually exclusive");
+    }
+
+    List<ServiceUserRegistry.Entry> candidates = filter(user);
+    List<AccountState> page = new ArrayList<>();
+    List<ServiceUserRegistry.Entry> pageEntries = new ArrayList<>();
+    boolean more = false;
+    int skipped = 0;
+    AccountControl accountControl = accountControlFactory.get();
+    batches:
+    for (List<ServiceUserRegistry.Entry> batch :
+        Iterables.partition(candidates, ACCOUNT_BATCH_SIZE)) {
+      Map<Account.Id, AccountState> accounts = getAccounts(batch);
+      for (ServiceUserRegistry.Entry e : batch) {
+        Optional<AccountState> account =
+            e.accountId().isPresent()
+                ? Optional.ofNullable(accounts.get(e.accountId().get()))
+                : accountCache.getByUsername(e.username());
+        if (!account.isPresent()
+            || !accountControl.canSee(account.get())
+            || !matchesState(account.get())) {
+          continue;
+        }
+        if (skipped < start) {
+          skipped++;
+          continue;
+        }
+        if (limit > 0 && page.size() == limit) {
+          more = true;
+          break batches;
+        }
+        page.add(account.get());
+        pageEntries.add(e);
+      }
+    }
+
+    Map<AccountGroup.UUID, GroupInfo> owners = formatOwners(pageEntries);
+    AccountLoader al = accountLoader.create(true);
+    List<AccountInfo> accountInfos = new ArrayList<>(page.size());
+    List<AccountInfo> creatorInfos = new ArrayList<>(page.size());
+    for (int i = 0; i < page.size(); i++) {
+      accountInfos.add(al.get(page.get(i).account().id()));
+      creatorInfos.add(al.get(pageEntries.get(i).creatorId()));
+    }
+    al.fill();
+
+    Map<String, ServiceUserInfo> result = Maps.newTreeMap();
+    ServiceUserInfo info = null;
+    for (int i = 0; i < page.size(); i++) {
+      ServiceUserRegistry.Entry e = pageEntries.get(i);
+      info = new ServiceUserInfo(accountInfos.get(i));
+      info.createdBy = creatorInfos.get(i);
+      info.createdAt = e.createdAt();
+      info.inactive = !page.get(i).account().isActive() ? true : null;
+      info.owner = e.owner().map(owners::get).orElse(null);
+      info.username = null;
+      result.put(e.username(), info);
+    }
+    if (more && info != null) {
+      info._moreAccounts = true;
+    }
+    return Response.ok(result);
+  }
+
+  /** Applies the filters that can be evaluated on the registry and the visibility rules. */
+  private List<ServiceUserRegistry.Entry> filter(CurrentUser user)
+      throws PermissionBackendException, RestApiException {
+    Optional<AccountGroup.UUID> ownerFilter = resolveOwnerFilter();
+    Instant after = parseDate("created-after", createdAfter);
+    Instant before = parseDate("created-before", createdBefore);
+    boolean isAdmin = permissionBackend.user(user).testOrFalse(ADMINISTRATE_SERVER);
+    Account.Id self = user.asIdentifiedUser().getAccountId();
+    Map<AccountGroup.UUID, Boolean> isOwnerMember = new HashMap<>();
+
+    List<ServiceUserRegistry.Entry> candidates = new ArrayList<>();
+    for (ServiceUserRegistry.Entry e :
+        storageCache.get().startingWith(Strings.nullToEmpty(prefix))) {
+      if (ownerFilter.isPresent() && !ownerFilter.equals(e.owner())) {
+        continue;
+      }
+      if (creator != null && !isCreator(e)) {
+        continue;
+      }
+      if (after != null || before != null) {
+        Optional<Instant> createdOn = e.createdOn();
+        if (!createdOn.isPresent()
+            || (after != null && createdOn.get().isBefore(after))
+            || (before != null && !createdOn.get().isBefore(before))) {
+          continue;
+        }
+      }
+      if (isAdmin || isVisible(user, self, e, isOwnerMember)) {
+        candidates.add(e);
+      }
+    }
+    return candidates;
+  }
+
+  private Optional<AccountGroup.UUID> resolveOwnerFilter() throws RestApiException {
+    if (Strings.isNullOrEmpty(owner)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(
+          groups
+              .parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner))
+              .getGroup()
+              .getGroupUUID());
+    } catch (ResourceNotFoundException e) {
+      throw new BadRequestException("Group " + owner + " not found", e);
+    } catch (Exception e) {
+      throw asRestApiException("Cannot resolve owner group", e);
+    }
+  }
+
+  private boolean isCreator(ServiceUserRegistry.Entry e) {
+    Optional<Integer> id = Account.Id.tryParse(creator).map(Account.Id::get);
+    if (id.isPresent()) {
+      return e.creatorId().get() == id.get();
+    }
+    return creator.equals(e.createdBy());
+  }
+
+  @Nullable
+  private static Instant parseDate(String name, @Nullable String value)
+      throws BadRequestException {
+    if (Strings.isNullOrEmpty(value)) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+    } catch (DateTimeParseException e) {
+      try {
+        return Instant.parse(value);
+      } catch (DateTimeParseException e2) {
+        throw new BadRequestException("Invalid " + name + " date: " + value, e2);
+      }
+    }
+  }
+
+  private boolean matchesState(AccountState account) {
+    if (active) {
+      return account.account().isActive();
+    }
+    if (inactive) {
+      return !account.account().isActive();
+    }
+    return true;
+  }
+
+  private boolean isVisible(
+      CurrentUser user,
+      Account.Id self,
+      ServiceUserRegistry.Entry e,
+      Map<AccountGroup.UUID, Boolean> isOwnerMember)
+      throws RestApiException {
+    Optional<AccountGroup.UUID> owner = e.owner();
+    if (!owner.isPresent()) {
+      return self.equals(e.creatorId());
+    }
+    Boolean member = isOwnerMember.get(owner.get());
+    if (member == null) {
+      member = isMember(user, owner.get());
+      isOwnerMember.put(owner.get(), member);
+    }
+    return member;
+  }
+
+  private boolean isMember(CurrentUser user, AccountGroup.UUID owner) throws RestApiException {
+    try {
+      AccountGroup.UUID groupUuid =
+          groups
+              .parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner.get()))
+              .getGroup()
+              .getGroupUUID();
+      return user.getEffectiveGroups().contains(groupUuid);
+    } catch (ResourceNotFoundException e) {
+      // the owner group is not visible to the caller -> ignore service users owned by it
+      return false;
+    } catch (Exception e) {
+      throw asRestApiException("Cannot list service users", e);
+    }
+  }
+
+  private Map<Account.Id, AccountState> getAccounts(List<ServiceUserRegistry.Entry> serviceUsers) {
+    Set<Account.Id> ids = new HashSet<>();
+    for (ServiceUserRegistry.Entry e : serviceUsers) {
+      e.accountId().ifPresent(ids::add);
+    }
+    return accountCache.get(ids);
+  }
 
-    Map<String, ServiceUserInfo> accounts = Maps.newTreeMap();
-    Config db = storageCache.get();
-    for (String username : db.getSubsections(USER)) {
-      Optional<AccountState> account = accountCache.getByUsername(username);
-      if (account.isPresent()) {
-        ServiceUserInfo info;
-        try {
-          ServiceUserResource serviceUserResource =
-              serviceUsers
-                  .get()
-                  .parse(
-                      new ConfigResource(),
-                      IdString.fromDecoded(String.valueOf(account.get().account().id().get())));
-          info = getServiceUser.get().apply(serviceUserResource).value();
-          info.username = null;
-          accounts.put(username, info);
-        } catch (ResourceNotFoundException e) {
-          // this service user is not visible to the caller -> ignore it
-        } catch (Exception e) {
-          throw asRestApiException("Cannot list service users", e);
+  private Map<AccountGroup.UUID, GroupInfo> formatOwners(
+      List<ServiceUserRegistry.Entry> serviceUsers) throws RestApiException {
+    Map<AccountGroup.UUID, GroupInfo> owners = new HashMap<>();
+    try (ManualRequestContext ctx = requestContext.open()) {
+      for (ServiceUserRegistry.Entry e : serviceUsers) {
+        Optional<AccountGroup.UUID> owner = e.owner();
+        if (owner.isPresent() && !owners.containsKey(owner.get())) {
+          owners.put(
+              owner.get(),
+              groupJson.format(
+                  groups
+                      .parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner.get().get()))
+                      .getGroup()));
         }
       }
+    } catch (Exception e) {
+      throw asRestApiException("Cannot get owner", e);
     }
-    return Response.ok(accounts);
+    return owners;
   }
 }
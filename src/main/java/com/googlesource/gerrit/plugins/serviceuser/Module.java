@@ -22,6 +22,7 @@ import static com.googlesource.gerrit.plugins.serviceuser.ServiceUserResource.SE
 import com.google.gerrit.extensions.annotations.Exports;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.config.CapabilityDefinition;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.registration.DynamicSet;
@@ -46,6 +47,7 @@ class Module extends AbstractModule {
     DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(RefUpdateListener.class);
     DynamicSet.bind(binder(), CommitValidationListener.class).to(ValidateServiceUserCommits.class);
     DynamicSet.bind(binder(), EventListener.class).to(CacheInvalidator.class);
+    DynamicSet.bind(binder(), AccountIndexedListener.class).to(ServiceUserIdentityIndex.class);
     install(new FactoryModuleBuilder().build(CreateServiceUserNotes.Factory.class));
     install(
         new RestApiModule() {
@@ -57,9 +59,11 @@ class Module extends AbstractModule {
             bind(ServiceUserCollection.class);
             child(CONFIG_KIND, "serviceusers").to(ServiceUserCollection.class);
             create(SERVICE_USER_KIND).to(CreateServiceUser.class);
+            postOnCollection(SERVICE_USER_KIND).to(BatchCreateServiceUsers.class);
             get(SERVICE_USER_KIND).to(GetServiceUser.class);
             get(CONFIG_KIND, "config").to(GetConfig.class);
             put(CONFIG_KIND, "config").to(PutConfig.class);
+            post(CONFIG_KIND, "register").to(BatchRegisterServiceUsers.class);
             child(SERVICE_USER_KIND, "sshkeys").to(SshKeys.class);
             get(SERVICE_USER_SSH_KEY_KIND).to(GetSshKey.class);
             post(SERVICE_USER_KIND, "sshkeys").to(AddSshKey.class);
@@ -79,15 +83,20 @@ class Module extends AbstractModule {
             get(SERVICE_USER_KIND, "owner").to(GetOwner.class);
             put(SERVICE_USER_KIND, "owner").to(PutOwner.class);
             delete(SERVICE_USER_KIND, "owner").to(PutOwner.class);
+            get(SERVICE_USER_KIND, "commits").to(GetCommits.class);
           }
         });
     install(new HttpModule());
     install(StorageCache.module());
+    install(OwnerMembersCache.module());
+    install(ServiceUserNotesQueue.module());
+    install(BackfillServiceUserNotes.module());
+    install(ServiceUserCommitIndex.module());
     install(new ServiceUserEmailModule());
   }
 
   @Provides
   VersionedConfigFile createProjectLevelConfig(@PluginName String pluginName) {
-    return new VersionedConfigFile(pluginName + ".db");
+    return new VersionedConfigFile(StorageCache.fileName(pluginName));
   }
 }
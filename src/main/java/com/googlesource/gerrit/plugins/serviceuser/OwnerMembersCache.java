@@ -0,0 +1,139 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.extensions.events.GroupIndexedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.account.GroupCache;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.group.InternalGroup;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the recursive members of the groups that own service users.
+ *
+ * <p>An entry is invalidated whenever the owner group or any of its subgroups is reindexed, i.e.
+ * whenever the membership of one of these groups may have changed.
+ */
+@Singleton
+public class OwnerMembersCache implements GroupIndexedListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String CACHE_NAME = "owner_members";
+
+  static CacheModule module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, AccountGroup.UUID.class, OwnerMembers.class).loader(Loader.class);
+        bind(OwnerMembersCache.class);
+        DynamicSet.bind(binder(), GroupIndexedListener.class).to(OwnerMembersCache.class);
+      }
+    };
+  }
+
+  /** The recursive members of an owner group. */
+  static class OwnerMembers {
+    /** Accounts that are direct or indirect members of the owner group. */
+    final ImmutableSet<Account.Id> members;
+
+    /** The owner group and all subgroups that were visited to compute the members. */
+    final ImmutableSet<AccountGroup.UUID> groups;
+
+    OwnerMembers(ImmutableSet<Account.Id> members, ImmutableSet<AccountGroup.UUID> groups) {
+      this.members = members;
+      this.groups = groups;
+    }
+  }
+
+  private final LoadingCache<AccountGroup.UUID, OwnerMembers> cache;
+
+  @Inject
+  OwnerMembersCache(@Named(CACHE_NAME) LoadingCache<AccountGroup.UUID, OwnerMembers> cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the IDs of the accounts that are direct or indirect members of the given owner group.
+   *
+   * <p>Only internal groups are expanded. The result is empty if the group does not exist.
+   */
+  public ImmutableSet<Account.Id> getMembers(AccountGroup.UUID owner) {
+    try {
+      return cache.get(owner).members;
+    } catch (ExecutionException e) {
+      logger.atWarning().withCause(e).log("Cannot load members of owner group %s", owner.get());
+      return ImmutableSet.of();
+    }
+  }
+
+  @Override
+  public void onGroupIndexed(String uuid) {
+    AccountGroup.UUID groupUuid = AccountGroup.uuid(uuid);
+    for (Map.Entry<AccountGroup.UUID, OwnerMembers> e : cache.asMap().entrySet()) {
+      if (e.getValue().groups.contains(groupUuid)) {
+        cache.invalidate(e.getKey());
+      }
+    }
+  }
+
+  @Singleton
+  static class Loader extends CacheLoader<AccountGroup.UUID, OwnerMembers> {
+    private final GroupCache groupCache;
+
+    @Inject
+    Loader(GroupCache groupCache) {
+      this.groupCache = groupCache;
+    }
+
+    @Override
+    public OwnerMembers load(AccountGroup.UUID owner) {
+      ImmutableSet.Builder<Account.Id> members = ImmutableSet.builder();
+      Set<AccountGroup.UUID> seen = new HashSet<>();
+      Deque<AccountGroup.UUID> todo = new ArrayDeque<>();
+      todo.add(owner);
+      seen.add(owner);
+      while (!todo.isEmpty()) {
+        Optional<InternalGroup> group = groupCache.get(todo.remove());
+        if (!group.isPresent()) {
+          // External groups and groups that don't exist have no members that can be listed.
+          continue;
+        }
+        members.addAll(group.get().getMembers());
+        for (AccountGroup.UUID subgroup : group.get().getSubgroups()) {
+          if (seen.add(subgroup)) {
+            todo.add(subgroup);
+          }
+        }
+      }
+      return new OwnerMembers(members.build(), ImmutableSet.copyOf(seen));
+    }
+  }
+}
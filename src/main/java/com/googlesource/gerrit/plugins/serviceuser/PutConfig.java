@@ -19,6 +19,7 @@ import com.google.gerrit.common.data.GlobalCapability;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestModifyView;
 import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
@@ -31,6 +32,7 @@ import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.serviceuser.PutConfig.Input;
 import java.io.IOException;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
@@ -55,22 +57,37 @@ class PutConfig implements RestModifyView<ConfigResource, Input> {
   private final SitePaths sitePaths;
   private final String pluginName;
   private final GroupCache groupCache;
+  private final BlockedNameFilter blockedNameFilter;
 
   @Inject
   PutConfig(
       PluginConfigFactory cfgFactory,
       SitePaths sitePaths,
       @PluginName String pluginName,
-      GroupCache groupCache) {
+      GroupCache groupCache,
+      BlockedNameFilter blockedNameFilter) {
     this.cfgFactory = cfgFactory;
     this.sitePaths = sitePaths;
     this.pluginName = pluginName;
     this.groupCache = groupCache;
+    this.blockedNameFilter = blockedNameFilter;
   }
 
   @Override
   public Response<String> apply(ConfigResource rsrc, Input input)
-      throws IOException, ConfigInvalidException, UnprocessableEntityException {
+      throws IOException,
+          ConfigInvalidException,
+          BadRequestException,
+          UnprocessableEntityException {
+    BlockedNameFilter.Rules blockedNameRules = null;
+    if (input.blockedNames != null) {
+      try {
+        blockedNameRules = BlockedNameFilter.compile(input.blockedNames.toArray(new String[0]));
+      } catch (PatternSyntaxException e) {
+        throw new BadRequestException("Invalid blocked name: " + e.getMessage(), e);
+      }
+    }
+
     FileBasedConfig cfg = new FileBasedConfig(sitePaths.gerrit_config.toFile(), FS.DETECTED);
     cfg.load();
     if (input.info != null) {
@@ -107,6 +124,9 @@ class PutConfig implements RestModifyView<ConfigResource, Input> {
     }
     cfg.save();
     cfgFactory.getFromGerritConfig(pluginName, true);
+    if (blockedNameRules != null) {
+      blockedNameFilter.set(blockedNameRules);
+    }
     return Response.<String>ok("OK");
   }
 
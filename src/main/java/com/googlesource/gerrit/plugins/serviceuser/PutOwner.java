@@ -130,7 +130,7 @@ class PutOwner implements RestModifyView<ServiceUserResource, Input> {
       }
       md.setMessage("Set owner for service user '" + rsrc.getUser().getUserName() + "'\n");
       update.commit(md);
-      storageCache.invalidate();
+      storageCache.reload();
     } catch (ConfigInvalidException e) {
       throw asRestApiException("Invalid configuration", e);
     }
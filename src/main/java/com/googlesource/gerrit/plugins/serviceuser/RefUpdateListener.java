@@ -14,44 +14,28 @@
 
 package com.googlesource.gerrit.plugins.serviceuser;
 
+import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
-import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
-import com.google.gerrit.server.git.GitRepositoryManager;
-import com.google.gerrit.server.git.ProjectRunnable;
-import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import java.io.IOException;
-import java.util.concurrent.Future;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Repository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 @Singleton
 class RefUpdateListener implements GitReferenceUpdatedListener {
-  private static final Logger log = LoggerFactory.getLogger(RefUpdateListener.class);
-
-  private final CreateServiceUserNotes.Factory serviceUserNotesFactory;
-  private final GitRepositoryManager repoManager;
-  private final WorkQueue workQueue;
+  private final ServiceUserNotesQueue notesQueue;
   private final PluginConfigFactory cfgFactory;
   private final String pluginName;
 
   @Inject
   RefUpdateListener(
-      CreateServiceUserNotes.Factory serviceUserNotesFactory,
-      GitRepositoryManager repoManager,
-      WorkQueue workQueue,
+      ServiceUserNotesQueue notesQueue,
       PluginConfigFactory cfgFactory,
       @PluginName String pluginName) {
-    this.serviceUserNotesFactory = serviceUserNotesFactory;
-    this.repoManager = repoManager;
-    this.workQueue = workQueue;
+    this.notesQueue = notesQueue;
     this.cfgFactory = cfgFactory;
     this.pluginName = pluginName;
   }
@@ -63,52 +47,14 @@ class RefUpdateListener implements GitReferenceUpdatedListener {
       return;
     }
 
-    Runnable task =
-        new ProjectRunnable() {
-          @Override
-          public void run() {
-            createServiceUserNotes(event);
-          }
-
-          @Override
-          public Project.NameKey getProjectNameKey() {
-            return Project.nameKey(event.getProjectName());
-          }
-
-          @Override
-          public String getRemoteName() {
-            return null;
-          }
-
-          @Override
-          public boolean hasCustomizedPrint() {
-            return true;
-          }
-
-          @Override
-          public String toString() {
-            return "create-service-user-notes";
-          }
-        };
+    BranchNameKey branch =
+        BranchNameKey.create(Project.nameKey(event.getProjectName()), event.getRefName());
+    ObjectId oldObjectId = ObjectId.fromString(event.getOldObjectId());
+    ObjectId newObjectId = ObjectId.fromString(event.getNewObjectId());
     if (cfg.getBoolean("createNotesAsync", false)) {
-      @SuppressWarnings("unused")
-      Future<?> possiblyIgnoredError = workQueue.getDefaultQueue().submit(task);
+      notesQueue.submit(branch, oldObjectId, newObjectId);
     } else {
-      task.run();
-    }
-  }
-
-  private void createServiceUserNotes(Event e) {
-    Project.NameKey projectName = Project.nameKey(e.getProjectName());
-    try (Repository git = repoManager.openRepository(projectName)) {
-      CreateServiceUserNotes crn = serviceUserNotesFactory.create(projectName, git);
-      crn.createNotes(
-          e.getRefName(),
-          ObjectId.fromString(e.getOldObjectId()),
-          ObjectId.fromString(e.getNewObjectId()));
-      crn.commitNotes();
-    } catch (IOException | RestApiException x) {
-      log.error(x.getMessage(), x);
+      notesQueue.createNotes(branch, oldObjectId, newObjectId);
     }
   }
 }
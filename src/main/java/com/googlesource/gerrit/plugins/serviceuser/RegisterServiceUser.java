@@ -16,15 +16,13 @@ package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.gerrit.server.api.ApiUtil.asRestApiException;
 import static com.google.gerrit.server.permissions.GlobalPermission.ADMINISTRATE_SERVER;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATED_AT;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATED_BY;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATOR_ID;
 import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_OWNER;
 import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.Project;
@@ -41,7 +39,6 @@ import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.RestCollectionCreateView;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.GerritPersonIdent;
-import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.ServerInitiated;
 import com.google.gerrit.server.account.AccountLoader;
 import com.google.gerrit.server.account.AccountResolver;
@@ -56,17 +53,14 @@ import com.google.gerrit.server.group.db.GroupDelta;
 import com.google.gerrit.server.group.db.GroupsUpdate;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
 import com.googlesource.gerrit.plugins.serviceuser.RegisterServiceUser.Input;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.time.ZoneId;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -88,7 +82,7 @@ class RegisterServiceUser
   private final Provider<CurrentUser> userProvider;
   private final MetaDataUpdate.User metaDataUpdateFactory;
   private final Project.NameKey allProjects;
-  private final DateFormat rfc2822DateFormatter;
+  private final ZoneId zone;
   private final AccountLoader.Factory accountLoader;
   private final StorageCache storageCache;
   private final PermissionBackend permissionBackend;
@@ -119,9 +113,7 @@ class RegisterServiceUser
     this.userProvider = userProvider;
     this.metaDataUpdateFactory = metaDataUpdateFactory;
     this.allProjects = allProjects;
-    this.rfc2822DateFormatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
-    this.rfc2822DateFormatter.setCalendar(
-        Calendar.getInstance(gerritIdent.getTimeZone(), Locale.US));
+    this.zone = gerritIdent.getTimeZone().toZoneId();
     this.accountLoader = accountLoader;
     this.storageCache = storageCache;
     this.permissionBackend = permissionBackend;
@@ -143,89 +135,131 @@ class RegisterServiceUser
       input = new Input();
     }
 
-    IdentifiedUser user;
+    Account.Id accountId = resolveAccount(requestingUser, input.username);
+    Registration registration = prepare(requestingUser, input.creator, input.owner);
+
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile update = configProvider.get();
+      update.load(md);
+
+      Config db = update.getConfig();
+      if (db.getSubsections(USER).contains(input.username)) {
+        return Response.none();
+      }
+      registration.addEntry(db, input.username);
+
+      md.setMessage("Create service user '" + input.username + "'\n");
+      update.commit(md);
+      storageCache.reload();
+    }
+
+    addToGroups(ImmutableSet.of(accountId));
+
+    ServiceUserInfo info = new ServiceUserInfo(new AccountInfo(accountId.get()));
+    AccountLoader al = accountLoader.create(true);
+    info.createdBy = al.get(registration.creatorId);
+    al.fill();
+    info.createdAt = registration.createdAt;
+    return Response.created(info);
+  }
+
+  /** The properties with which accounts are registered as service users. */
+  static class Registration {
+    @Nullable final String creator;
+    final Account.Id creatorId;
+    @Nullable final String owner;
+    final String createdAt;
+
+    private Registration(
+        @Nullable String creator, Account.Id creatorId, @Nullable String owner, String createdAt) {
+      this.creator = creator;
+      this.creatorId = creatorId;
+      this.owner = owner;
+      this.createdAt = createdAt;
+    }
+
+    /** Adds the entry of a newly registered service user to the {@code serviceuser.db} file. */
+    void addEntry(Config db, String username) {
+      CreateServiceUser.addEntry(db, username, creatorId, creator, createdAt);
+      if (owner != null) {
+        db.setString(USER, username, KEY_OWNER, owner);
+      }
+    }
+  }
+
+  /**
+   * Resolves the account with the given username and checks that the requesting user may register
+   * it as service user.
+   *
+   * @throws BadRequestException if the account doesn't exist or the username is blocked
+   * @throws MethodNotAllowedException if the requesting user may not register the account
+   */
+  Account.Id resolveAccount(CurrentUser requestingUser, String username)
+      throws RestApiException, IOException, ConfigInvalidException, PermissionBackendException {
+    Account.Id accountId;
     try {
-      user = accountResolver.resolve(input.username).asUniqueUser();
+      accountId = accountResolver.resolve(username).asUniqueUser().getAccountId();
     } catch (UnresolvableAccountException e) {
       throw new BadRequestException("Username does not exist");
     }
 
-    if (!requestingUser.getAccountId().equals(user.getAccountId())
+    if (!requestingUser.getAccountId().equals(accountId)
         && !permissionBackend.user(requestingUser).testOrFalse(ADMINISTRATE_SERVER)) {
       throw new MethodNotAllowedException("Forbidden");
     }
 
-    if (blockedNameFilter.isBlocked(input.username)) {
+    if (blockedNameFilter.isBlocked(username)) {
       throw new BadRequestException(
-          "The username '" + input.username + "' is not allowed as name for service users.");
+          "The username '" + username + "' is not allowed as name for service users.");
     }
+    return accountId;
+  }
 
-    String creator;
+  /**
+   * Resolves the creator and the owner group with which accounts are registered.
+   *
+   * @param creator the creator, if not set the requesting user
+   * @param owner the owner group, may be unset
+   */
+  Registration prepare(CurrentUser requestingUser, @Nullable String creator, @Nullable String owner)
+      throws RestApiException, IOException, ConfigInvalidException {
+    String creatorName;
     Account.Id creatorId;
-    if (Strings.isNullOrEmpty(input.creator)) {
-      creator = requestingUser.getUserName().orElse(null);
+    if (Strings.isNullOrEmpty(creator)) {
+      creatorName = requestingUser.getUserName().orElse(null);
       creatorId = requestingUser.asIdentifiedUser().getAccountId();
     } else {
-      creator = input.creator;
-      creatorId = accountResolver.resolve(input.creator).asUniqueUser().getAccountId();
+      creatorName = creator;
+      creatorId = accountResolver.resolve(creator).asUniqueUser().getAccountId();
     }
-    String creationDate = rfc2822DateFormatter.format(new Date());
 
-    String owner = null;
-    if (!Strings.isNullOrEmpty(input.owner)) {
+    String ownerUuid = null;
+    if (!Strings.isNullOrEmpty(owner)) {
       try {
-        owner = groupResolver.parse(input.owner).getGroupUUID().toString();
+        ownerUuid = groupResolver.parse(owner).getGroupUUID().toString();
       } catch (UnresolvableAccountException e) {
-        throw new BadRequestException("The group '" + input.owner + "' does not exist");
+        throw new BadRequestException("The group '" + owner + "' does not exist");
       }
     }
+    return new Registration(
+        creatorName, creatorId, ownerUuid, HeaderFormatter.formatDate(TimeUtil.now(), zone));
+  }
 
-    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
-      VersionedConfigFile update = configProvider.get();
-      update.load(md);
-
-      Config db = update.getConfig();
-      if (db.getSubsections(USER).contains(input.username)) {
-        return Response.none();
-      }
-      db.setInt(USER, input.username, KEY_CREATOR_ID, creatorId.get());
-      if (creator != null) {
-        db.setString(USER, input.username, KEY_CREATED_BY, creator);
-      }
-      if (owner != null) {
-        db.setString(USER, input.username, KEY_OWNER, owner);
-      }
-      db.setString(USER, input.username, KEY_CREATED_AT, creationDate);
-
-      md.setMessage("Create service user '" + input.username + "'\n");
-      update.commit(md);
-      storageCache.invalidate();
-    }
-
-    Account.Id accountId = user.getAccountId();
+  /** Adds the given newly registered service users to each configured group. */
+  void addToGroups(ImmutableSet<Account.Id> accountIds)
+      throws RestApiException, IOException, ConfigInvalidException {
     for (String groupName : config.getStringList("plugin", pluginName, "group")) {
       AccountGroup.UUID groupUuid = groupResolver.parse(groupName).getGroupUUID();
+      GroupDelta groupDelta =
+          GroupDelta.builder()
+              .setMemberModification(memberIds -> Sets.union(memberIds, accountIds))
+              .build();
       try {
-        addGroupMember(groupUuid, accountId);
+        groupsUpdateProvider.get().updateGroup(groupUuid, groupDelta);
       } catch (NoSuchGroupException e) {
-        throw asRestApiException("Cannot add account: " + accountId + " to group: " + groupName, e);
+        throw asRestApiException(
+            "Cannot add accounts: " + accountIds + " to group: " + groupName, e);
       }
     }
-
-    ServiceUserInfo info = new ServiceUserInfo(new AccountInfo(user.getAccountId().get()));
-    AccountLoader al = accountLoader.create(true);
-    info.createdBy = al.get(creatorId);
-    al.fill();
-    info.createdAt = creationDate;
-    return Response.created(info);
-  }
-
-  private void addGroupMember(AccountGroup.UUID groupUuid, Account.Id accountId)
-      throws IOException, NoSuchGroupException, ConfigInvalidException {
-    GroupDelta groupDelta =
-        GroupDelta.builder()
-            .setMemberModification(memberIds -> Sets.union(memberIds, ImmutableSet.of(accountId)))
-            .build();
-    groupsUpdateProvider.get().updateGroup(groupUuid, groupDelta);
   }
 }
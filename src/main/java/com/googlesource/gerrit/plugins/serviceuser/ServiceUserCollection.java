@@ -15,11 +15,8 @@
 package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.gerrit.server.permissions.GlobalPermission.ADMINISTRATE_SERVER;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATOR_ID;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_OWNER;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
 
-import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.GroupDescription;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.restapi.AuthException;
@@ -40,8 +37,8 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Optional;
 import org.eclipse.jgit.errors.ConfigInvalidException;
-import org.eclipse.jgit.lib.Config;
 
 @Singleton
 class ServiceUserCollection implements ChildCollection<ConfigResource, ServiceUserResource> {
@@ -81,8 +78,12 @@ class ServiceUserCollection implements ChildCollection<ConfigResource, ServiceUs
           ConfigInvalidException,
           RestApiException {
     IdentifiedUser serviceUser = accounts.get().parse(TopLevelResource.INSTANCE, id).getUser();
-    Config db = storageCache.get();
-    if (serviceUser == null || !db.getSubsections(USER).contains(serviceUser.getUserName().get())) {
+    if (serviceUser == null || !serviceUser.getUserName().isPresent()) {
+      throw new ResourceNotFoundException(id);
+    }
+    Optional<ServiceUserRegistry.Entry> entry =
+        storageCache.get().get(serviceUser.getUserName().get());
+    if (!entry.isPresent()) {
       throw new ResourceNotFoundException(id);
     }
     CurrentUser user = userProvider.get();
@@ -90,17 +91,16 @@ class ServiceUserCollection implements ChildCollection<ConfigResource, ServiceUs
       throw new AuthException("Authentication required");
     }
     if (!permissionBackend.user(user).testOrFalse(ADMINISTRATE_SERVER)) {
-      String username = serviceUser.getUserName().get();
-      String owner = db.getString(USER, username, KEY_OWNER);
-      if (owner != null) {
+      Optional<AccountGroup.UUID> owner = entry.get().owner();
+      if (owner.isPresent()) {
         GroupDescription.Basic group =
-            groups.parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner)).getGroup();
+            groups
+                .parse(TopLevelResource.INSTANCE, IdString.fromDecoded(owner.get().get()))
+                .getGroup();
         if (!user.getEffectiveGroups().contains(group.getGroupUUID())) {
           throw new ResourceNotFoundException(id);
         }
-      } else if (!((IdentifiedUser) user)
-          .getAccountId()
-          .equals(Account.id(db.getInt(USER, username, KEY_CREATOR_ID, -1)))) {
+      } else if (!((IdentifiedUser) user).getAccountId().equals(entry.get().creatorId())) {
         throw new ResourceNotFoundException(id);
       }
     }
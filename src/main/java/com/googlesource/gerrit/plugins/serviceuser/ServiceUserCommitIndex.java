@@ -0,0 +1,276 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static java.util.Comparator.comparingInt;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Striped;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Index of the commits that are annotated by a service user note, per project and service user.
+ *
+ * <p>The index of a project is built from the {@code refs/notes/serviceuser} branch. When the
+ * notes branch was updated, only the notes that changed since the indexed notes commit are read.
+ * The index of a project is brought up to date when it is queried, not when notes are written.
+ *
+ * <p>Annotated commits whose committer doesn't resolve to exactly one service user are kept as
+ * unresolved and are resolved again when the {@link ServiceUserIdentityIndex} changed, e.g.
+ * because a service user was registered or its email addresses changed.
+ *
+ * <p>The size of the cache is limited by the total number of indexed commits, the index of a
+ * project that doesn't fit is built again when it is queried.
+ */
+@Singleton
+class ServiceUserCommitIndex {
+  private static final String CACHE_NAME = "service_user_commits";
+
+  /** Default maximum number of commits that are indexed over all projects. */
+  private static final long DEFAULT_MAX_COMMITS = 200_000;
+
+  static CacheModule module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Project.NameKey.class, ProjectIndex.class)
+            .maximumWeight(DEFAULT_MAX_COMMITS)
+            .weigher(ProjectIndexWeigher.class);
+        bind(ServiceUserCommitIndex.class);
+      }
+    };
+  }
+
+  /** Weighs the index of a project by the number of its indexed commits. */
+  static class ProjectIndexWeigher implements Weigher<Project.NameKey, ProjectIndex> {
+    @Override
+    public int weigh(Project.NameKey project, ProjectIndex index) {
+      return 1 + index.byCommit.size() + index.unresolved.size();
+    }
+  }
+
+  /** An annotated commit of a service user. */
+  static class IndexedCommit {
+    final ObjectId commitId;
+    final Account.Id serviceUser;
+    final int commitTime;
+
+    IndexedCommit(ObjectId commitId, Account.Id serviceUser, int commitTime) {
+      this.commitId = commitId;
+      this.serviceUser = serviceUser;
+      this.commitTime = commitTime;
+    }
+  }
+
+  /** The indexed commits of one project at a certain state of the notes branch. */
+  static class ProjectIndex {
+    static final ProjectIndex EMPTY =
+        new ProjectIndex(null, 0, ImmutableMap.of(), ImmutableSet.of());
+
+    @Nullable final ObjectId notesTip;
+
+    /** The generation of the identity index with which the commits were resolved. */
+    final long identities;
+
+    final ImmutableMap<ObjectId, IndexedCommit> byCommit;
+
+    /** The annotated commits whose committer didn't resolve to a service user. */
+    final ImmutableSet<ObjectId> unresolved;
+
+    /** The commits of each service user, the most recent commit first. */
+    final ImmutableListMultimap<Account.Id, IndexedCommit> byServiceUser;
+
+    ProjectIndex(
+        @Nullable ObjectId notesTip,
+        long identities,
+        ImmutableMap<ObjectId, IndexedCommit> byCommit,
+        ImmutableSet<ObjectId> unresolved) {
+      this.notesTip = notesTip;
+      this.identities = identities;
+      this.byCommit = byCommit;
+      this.unresolved = unresolved;
+      ImmutableListMultimap.Builder<Account.Id, IndexedCommit> b = ImmutableListMultimap.builder();
+      byCommit.values().stream()
+          .sorted(comparingInt((IndexedCommit c) -> c.commitTime).reversed())
+          .forEach(c -> b.put(c.serviceUser, c));
+      this.byServiceUser = b.build();
+    }
+
+    /**
+     * Whether this index is up to date with the given notes commit and generation of the identity
+     * index. A change of the identity index only matters if there are unresolved commits.
+     */
+    boolean isUpToDate(@Nullable ObjectId notesTip, long identities) {
+      return Objects.equals(this.notesTip, notesTip)
+          && (unresolved.isEmpty() || this.identities == identities);
+    }
+  }
+
+  private final Cache<Project.NameKey, ProjectIndex> cache;
+  private final ServiceUserIdentityIndex identityIndex;
+  private final Striped<Lock> locks = Striped.lock(64);
+
+  @Inject
+  ServiceUserCommitIndex(
+      @Named(CACHE_NAME) Cache<Project.NameKey, ProjectIndex> cache,
+      ServiceUserIdentityIndex identityIndex) {
+    this.cache = cache;
+    this.identityIndex = identityIndex;
+  }
+
+  /**
+   * Returns the annotated commits of the given service user in the given project, the most recent
+   * commit first.
+   */
+  ImmutableList<IndexedCommit> getCommits(
+      Project.NameKey project, Repository git, Account.Id serviceUser) throws IOException {
+    return update(project, git).byServiceUser.get(serviceUser);
+  }
+
+  /**
+   * Brings the index of the given project up to date with the notes branch. The index of a project
+   * is built when it is first queried. The updates of a project are serialized by a striped lock,
+   * so updates of different projects rarely block each other.
+   */
+  private ProjectIndex update(Project.NameKey project, Repository git) throws IOException {
+    Ref notesRef = git.exactRef(CreateServiceUserNotes.REFS_NOTES_SERVICEUSER);
+    ObjectId notesTip = notesRef != null ? notesRef.getObjectId() : null;
+    long identities = identityIndex.generation();
+    ProjectIndex index = cache.getIfPresent(project);
+    if (index != null && index.isUpToDate(notesTip, identities)) {
+      return index;
+    }
+    Lock lock = locks.get(project);
+    lock.lock();
+    try {
+      index = cache.getIfPresent(project);
+      if (index == null) {
+        index = ProjectIndex.EMPTY;
+      }
+      if (!index.isUpToDate(notesTip, identities)) {
+        index = update(git, index, notesTip, identities);
+        cache.put(project, index);
+      }
+      return index;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ProjectIndex update(
+      Repository git, ProjectIndex index, @Nullable ObjectId notesTip, long identities)
+      throws IOException {
+    if (notesTip == null) {
+      return ProjectIndex.EMPTY;
+    }
+
+    Map<ObjectId, IndexedCommit> byCommit = new HashMap<>(index.byCommit);
+    Set<ObjectId> unresolved = new HashSet<>(index.unresolved);
+    Map<String, Optional<Account.Id>> serviceUsers = new HashMap<>();
+    try (RevWalk rw = new RevWalk(git);
+        TreeWalk tw = new TreeWalk(rw.getObjectReader())) {
+      tw.setRecursive(true);
+      tw.setFilter(TreeFilter.ANY_DIFF);
+      if (index.notesTip != null) {
+        tw.addTree(rw.parseCommit(index.notesTip).getTree());
+      } else {
+        tw.addTree(new EmptyTreeIterator());
+      }
+      tw.addTree(rw.parseCommit(notesTip).getTree());
+
+      List<ObjectId> toResolve = new ArrayList<>();
+      while (tw.next()) {
+        // Note paths are commit IDs that may be split into fan-out directories.
+        String name = tw.getPathString().replace("/", "");
+        if (!ObjectId.isId(name)) {
+          continue;
+        }
+        ObjectId commitId = ObjectId.fromString(name);
+        if (tw.getFileMode(1) == FileMode.MISSING) {
+          byCommit.remove(commitId);
+          unresolved.remove(commitId);
+        } else if (!byCommit.containsKey(commitId) && !unresolved.contains(commitId)) {
+          toResolve.add(commitId);
+        }
+      }
+      if (index.identities != identities) {
+        toResolve.addAll(unresolved);
+        unresolved.clear();
+      }
+
+      for (ObjectId commitId : toResolve) {
+        RevCommit c;
+        try {
+          c = rw.parseCommit(commitId);
+        } catch (IOException e) {
+          // The annotated commit is not available, e.g. because it was garbage collected.
+          continue;
+        }
+        Optional<Account.Id> serviceUser = resolve(c.getCommitterIdent(), serviceUsers);
+        if (serviceUser.isPresent()) {
+          byCommit.put(
+              commitId, new IndexedCommit(commitId, serviceUser.get(), c.getCommitTime()));
+        } else {
+          unresolved.add(commitId);
+        }
+      }
+    }
+    return new ProjectIndex(
+        notesTip, identities, ImmutableMap.copyOf(byCommit), ImmutableSet.copyOf(unresolved));
+  }
+
+  private Optional<Account.Id> resolve(
+      PersonIdent committer, Map<String, Optional<Account.Id>> serviceUsers) {
+    return serviceUsers.computeIfAbsent(
+        committer.getEmailAddress(),
+        email -> {
+          Set<Account.Id> candidates = identityIndex.getByEmail(email);
+          return candidates.size() == 1
+              ? Optional.of(candidates.iterator().next())
+              : Optional.empty();
+        });
+  }
+}
@@ -0,0 +1,164 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
+import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Emails;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Index from email address to the service users that own the email address.
+ *
+ * <p>Used on the receive path to find the service user of a committer identity. Committers whose
+ * email address doesn't belong to any service user are rejected by a single hash lookup. The
+ * index is rebuilt lazily when the service users change or when the account of a service user is
+ * reindexed, e.g. because its email addresses changed.
+ */
+@Singleton
+class ServiceUserIdentityIndex implements AccountIndexedListener {
+  private static class Snapshot {
+    final ServiceUserRegistry registry;
+    final ImmutableSetMultimap<String, Account.Id> byEmail;
+    final long generation;
+
+    Snapshot(
+        ServiceUserRegistry registry,
+        ImmutableSetMultimap<String, Account.Id> byEmail,
+        long generation) {
+      this.registry = registry;
+      this.byEmail = byEmail;
+      this.generation = generation;
+    }
+  }
+
+  private final StorageCache storageCache;
+  private final AccountCache accountCache;
+  private final Emails emails;
+  private final AtomicLong generations = new AtomicLong();
+
+  private volatile Snapshot snapshot;
+
+  @Inject
+  ServiceUserIdentityIndex(StorageCache storageCache, AccountCache accountCache, Emails emails) {
+    this.storageCache = storageCache;
+    this.accountCache = accountCache;
+    this.emails = emails;
+  }
+
+  /**
+   * Returns the account ID of the service user with the given identity.
+   *
+   * <p>The identity is resolved the same way as by {@code AccountResolver} for a {@code "Name
+   * <email>"} input: the email address must belong to exactly one active account, or, if several
+   * active accounts have the email address, the name must match the full name of exactly one of
+   * them. The resolved account must be a service user.
+   */
+  Optional<Account.Id> resolve(PersonIdent ident) throws IOException {
+    String email = ident.getEmailAddress();
+    Snapshot s = snapshot();
+    if (Strings.isNullOrEmpty(email) || !s.byEmail.containsKey(email)) {
+      return Optional.empty();
+    }
+
+    // Other accounts may have the same email address, which makes the identity ambiguous.
+    ImmutableList<AccountState> matches =
+        accountCache.get(emails.getAccountFor(email)).values().stream()
+            .filter(a -> a.account().isActive())
+            .collect(toImmutableList());
+    if (matches.size() > 1) {
+      String name = ident.getName();
+      matches =
+          matches.stream()
+              .filter(a -> name.equals(a.account().fullName()))
+              .collect(toImmutableList());
+    }
+    if (matches.size() != 1) {
+      return Optional.empty();
+    }
+    Account.Id accountId = matches.get(0).account().id();
+    return s.registry.get(accountId).isPresent() ? Optional.of(accountId) : Optional.empty();
+  }
+
+  /** Returns the account IDs of the service users that have the given email address. */
+  ImmutableSet<Account.Id> getByEmail(String email) {
+    return snapshot().byEmail.get(email);
+  }
+
+  /**
+   * Returns the generation of the index, which changes whenever the index is rebuilt, e.g. because
+   * the service users or their email addresses changed.
+   */
+  long generation() {
+    return snapshot().generation;
+  }
+
+  @Override
+  public void onAccountIndexed(int id) {
+    Snapshot s = snapshot;
+    if (s != null && s.registry.get(Account.id(id)).isPresent()) {
+      snapshot = null;
+    }
+  }
+
+  private Snapshot snapshot() {
+    ServiceUserRegistry registry = storageCache.get();
+    Snapshot s = snapshot;
+    if (s == null || s.registry != registry) {
+      s = new Snapshot(registry, index(registry), generations.incrementAndGet());
+      snapshot = s;
+    }
+    return s;
+  }
+
+  private ImmutableSetMultimap<String, Account.Id> index(ServiceUserRegistry registry) {
+    ImmutableSetMultimap.Builder<String, Account.Id> byEmail = ImmutableSetMultimap.builder();
+    Map<Account.Id, AccountState> accounts =
+        accountCache.get(
+            registry.all().stream()
+                .map(ServiceUserRegistry.Entry::accountId)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(toImmutableSet()));
+    for (AccountState a : accounts.values()) {
+      Account.Id id = a.account().id();
+      if (a.account().preferredEmail() != null) {
+        byEmail.put(a.account().preferredEmail(), id);
+      }
+      for (ExternalId extId : a.externalIds()) {
+        if (extId.email() != null) {
+          byEmail.put(extId.email(), id);
+        }
+      }
+    }
+    return byEmail.build();
+  }
+}
@@ -0,0 +1,273 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.ProjectRunnable;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the Git notes for service user commits on a dedicated work queue.
+ *
+ * <p>Updates of a project are collected for a configurable delay and then processed by a single
+ * task, which writes the notes for all updated branches with a single commit to the notes branch.
+ * Updates that are received while an earlier update of the same project is still waiting in the
+ * queue are merged into the waiting task. If the configured number of waiting tasks is reached,
+ * further updates are dropped. The waiting tasks are run when the queue is stopped.
+ */
+@Singleton
+class ServiceUserNotesQueue implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(ServiceUserNotesQueue.class);
+
+  static final String QUEUE_NAME = "ServiceUserNotes";
+
+  static LifecycleModule module() {
+    return new LifecycleModule() {
+      @Override
+      protected void configure() {
+        bind(ServiceUserNotesQueue.class);
+        listener().to(ServiceUserNotesQueue.class);
+      }
+    };
+  }
+
+  private final CreateServiceUserNotes.Factory serviceUserNotesFactory;
+  private final GitRepositoryManager repoManager;
+  private final WorkQueue workQueue;
+  private final int threads;
+  private final int maxPending;
+  private final long delayMillis;
+  private final Counter0 dropped;
+  private final ConcurrentMap<Project.NameKey, Task> pending = new ConcurrentHashMap<>();
+
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  ServiceUserNotesQueue(
+      CreateServiceUserNotes.Factory serviceUserNotesFactory,
+      GitRepositoryManager repoManager,
+      WorkQueue workQueue,
+      MetricMaker metricMaker,
+      PluginConfigFactory cfgFactory,
+      @PluginName String pluginName) {
+    this.serviceUserNotesFactory = serviceUserNotesFactory;
+    this.repoManager = repoManager;
+    this.workQueue = workQueue;
+    PluginConfig cfg = cfgFactory.getFromGerritConfig(pluginName);
+    this.threads = Math.max(1, cfg.getInt("createNotesThreads", 1));
+    this.maxPending = Math.max(1, cfg.getInt("createNotesQueueSize", 1000));
+    this.delayMillis =
+        ConfigUtil.getTimeUnit(
+            Strings.nullToEmpty(cfg.getString("createNotesDelay")), 0, TimeUnit.MILLISECONDS);
+    this.dropped =
+        metricMaker.newCounter(
+            "notes/dropped_count",
+            new Description(
+                    "Number of ref updates for which no service user notes were created"
+                        + " because the notes queue was full or stopped")
+                .setRate()
+                .setUnit("updates"));
+  }
+
+  @Override
+  public void start() {
+    executor = workQueue.createQueue(threads, QUEUE_NAME);
+  }
+
+  /**
+   * Stops the queue. The tasks that are still waiting for their delay to pass are run on the
+   * calling thread, so that the notes for all received updates are created.
+   */
+  @Override
+  public void stop() {
+    ScheduledExecutorService e = executor;
+    executor = null;
+    if (e != null) {
+      e.shutdownNow();
+    }
+    for (Task task : ImmutableList.copyOf(pending.values())) {
+      try {
+        task.run();
+      } catch (RuntimeException x) {
+        log.error("Failed to create notes on shutdown: {}", task, x);
+      }
+    }
+    pending.clear();
+  }
+
+  /** Schedules the creation of the notes for an update of the given branch. */
+  void submit(BranchNameKey branch, ObjectId oldObjectId, ObjectId newObjectId) {
+    ScheduledExecutorService e = executor;
+    if (e == null) {
+      dropped.increment();
+      log.warn("Notes queue is stopped, skip creating notes for {}", branch);
+      return;
+    }
+    Project.NameKey project = branch.project();
+    while (true) {
+      Task task = pending.get(project);
+      if (task != null) {
+        if (task.add(branch.branch(), oldObjectId, newObjectId)) {
+          return;
+        }
+        // The task already started, it will not pick up this update.
+        pending.remove(project, task);
+        continue;
+      }
+      if (pending.size() >= maxPending) {
+        dropped.increment();
+        log.warn(
+            "Notes queue is full ({} pending tasks), skip creating notes for {}",
+            maxPending,
+            branch);
+        return;
+      }
+      task = new Task(project);
+      task.add(branch.branch(), oldObjectId, newObjectId);
+      if (pending.putIfAbsent(project, task) == null) {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError = e.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+  }
+
+  /** Creates and commits the notes for the commits between the given objects. */
+  void createNotes(BranchNameKey branch, ObjectId oldObjectId, ObjectId newObjectId) {
+    createNotes(
+        branch.project(),
+        ImmutableMap.of(branch.branch(), new BranchUpdate(oldObjectId, newObjectId)));
+  }
+
+  /**
+   * Creates the notes for the commits of all given branch updates and commits them to the notes
+   * branch at once.
+   */
+  private void createNotes(Project.NameKey projectName, Map<String, BranchUpdate> updates) {
+    try (Repository git = repoManager.openRepository(projectName)) {
+      CreateServiceUserNotes crn = serviceUserNotesFactory.create(projectName, git);
+      for (Map.Entry<String, BranchUpdate> e : updates.entrySet()) {
+        crn.createNotes(e.getKey(), e.getValue().oldObjectId, e.getValue().newObjectId);
+      }
+      crn.commitNotes();
+    } catch (IOException | RestApiException x) {
+      log.error(x.getMessage(), x);
+    }
+  }
+
+  private static class BranchUpdate {
+    final ObjectId oldObjectId;
+    ObjectId newObjectId;
+
+    BranchUpdate(ObjectId oldObjectId, ObjectId newObjectId) {
+      this.oldObjectId = oldObjectId;
+      this.newObjectId = newObjectId;
+    }
+  }
+
+  private class Task implements ProjectRunnable {
+    private final Project.NameKey project;
+    private final Map<String, BranchUpdate> updates = new LinkedHashMap<>();
+    private boolean started;
+
+    Task(Project.NameKey project) {
+      this.project = project;
+    }
+
+    /**
+     * Adds the given branch update to this task, unless it already started. A further update of a
+     * branch that was already added extends the range of commits to the new tip.
+     *
+     * @return whether the update was added to this task
+     */
+    synchronized boolean add(String branch, ObjectId oldObjectId, ObjectId newObjectId) {
+      if (started) {
+        return false;
+      }
+      BranchUpdate update = updates.get(branch);
+      if (update != null) {
+        update.newObjectId = newObjectId;
+      } else {
+        updates.put(branch, new BranchUpdate(oldObjectId, newObjectId));
+      }
+      return true;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (started) {
+          // Already run by the queue or on shutdown.
+          return;
+        }
+        started = true;
+      }
+      pending.remove(project, this);
+      createNotes(project, updates);
+    }
+
+    @Override
+    public Project.NameKey getProjectNameKey() {
+      return project;
+    }
+
+    @Override
+    public String getRemoteName() {
+      return null;
+    }
+
+    @Override
+    public boolean hasCustomizedPrint() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      synchronized (this) {
+        return String.format(
+            "create-service-user-notes %s (%d branches)", project.get(), updates.size());
+      }
+    }
+  }
+}
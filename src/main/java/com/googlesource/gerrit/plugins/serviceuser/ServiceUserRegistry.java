@@ -0,0 +1,235 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATED_AT;
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATED_BY;
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_CREATOR_ID;
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_OWNER;
+import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Immutable snapshot of the service users that are stored in the {@code serviceuser.db} file.
+ *
+ * <p>The snapshot is built once per load of the storage cache and is indexed by username and by
+ * the account ID of the service user, so that lookups on the REST and receive paths neither
+ * re-read the JGit {@link Config} nor allocate.
+ */
+public class ServiceUserRegistry {
+  public static final ServiceUserRegistry EMPTY =
+      new ServiceUserRegistry(null, ImmutableSortedMap.of(), ImmutableMap.of());
+
+  /** Properties of a single service user as stored in the {@code serviceuser.db} file. */
+  public static class Entry {
+    private final String username;
+    @Nullable private final Account.Id accountId;
+    private final Account.Id creatorId;
+    @Nullable private final String createdBy;
+    @Nullable private final String createdAt;
+    @Nullable private final Instant createdOn;
+    @Nullable private final AccountGroup.UUID owner;
+
+    Entry(
+        String username,
+        @Nullable Account.Id accountId,
+        Account.Id creatorId,
+        @Nullable String createdBy,
+        @Nullable String createdAt,
+        @Nullable AccountGroup.UUID owner) {
+      this.username = username;
+      this.accountId = accountId;
+      this.creatorId = creatorId;
+      this.createdBy = createdBy;
+      this.createdAt = createdAt;
+      this.createdOn = parseCreatedAt(createdAt);
+      this.owner = owner;
+    }
+
+    public String username() {
+      return username;
+    }
+
+    /**
+     * Account ID of the service user, empty if the username could not be resolved when the
+     * snapshot was loaded.
+     */
+    public Optional<Account.Id> accountId() {
+      return Optional.ofNullable(accountId);
+    }
+
+    /** Account ID of the creator, {@code -1} if it is not recorded. */
+    public Account.Id creatorId() {
+      return creatorId;
+    }
+
+    @Nullable
+    public String createdBy() {
+      return createdBy;
+    }
+
+    @Nullable
+    public String createdAt() {
+      return createdAt;
+    }
+
+    /** The creation date, empty if it is not recorded or cannot be parsed. */
+    public Optional<Instant> createdOn() {
+      return Optional.ofNullable(createdOn);
+    }
+
+    public Optional<AccountGroup.UUID> owner() {
+      return Optional.ofNullable(owner);
+    }
+
+    private boolean hasProperties(
+        Account.Id creatorId,
+        @Nullable String createdBy,
+        @Nullable String createdAt,
+        @Nullable AccountGroup.UUID owner) {
+      return this.creatorId.equals(creatorId)
+          && Objects.equals(this.createdBy, createdBy)
+          && Objects.equals(this.createdAt, createdAt)
+          && Objects.equals(this.owner, owner);
+    }
+  }
+
+  @Nullable
+  private static Instant parseCreatedAt(@Nullable String createdAt) {
+    if (createdAt == null) {
+      return null;
+    }
+    try {
+      return ZonedDateTime.parse(createdAt, HeaderFormatter.RFC_2822_FORMAT).toInstant();
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  static ServiceUserRegistry parse(
+      Config db, Function<String, Optional<Account.Id>> accountIdResolver) {
+    return parse(null, db, EMPTY, accountIdResolver);
+  }
+
+  /**
+   * Parses the given {@code serviceuser.db} content.
+   *
+   * <p>Entries of the previous registry whose properties did not change are reused, so that only
+   * the {@code user} subsections that differ need to be materialized and resolved again.
+   *
+   * @param blobId ID of the {@code serviceuser.db} blob from which {@code db} was parsed
+   * @param db the parsed {@code serviceuser.db} file
+   * @param previous the previously loaded registry
+   * @param accountIdResolver resolves the username of a service user to its account ID, may
+   *     return an empty result if the username is unknown
+   */
+  static ServiceUserRegistry parse(
+      @Nullable ObjectId blobId,
+      Config db,
+      ServiceUserRegistry previous,
+      Function<String, Optional<Account.Id>> accountIdResolver) {
+    ImmutableSortedMap.Builder<String, Entry> byUsername = ImmutableSortedMap.naturalOrder();
+    ImmutableMap.Builder<Account.Id, Entry> byAccountId = ImmutableMap.builder();
+    for (String username : db.getSubsections(USER)) {
+      Account.Id creatorId = Account.id(db.getInt(USER, username, KEY_CREATOR_ID, -1));
+      String createdBy = db.getString(USER, username, KEY_CREATED_BY);
+      String createdAt = db.getString(USER, username, KEY_CREATED_AT);
+      String ownerValue = Strings.emptyToNull(db.getString(USER, username, KEY_OWNER));
+      AccountGroup.UUID owner = ownerValue != null ? AccountGroup.uuid(ownerValue) : null;
+
+      Entry e = previous.byUsername.get(username);
+      if (e == null
+          || e.accountId == null
+          || !e.hasProperties(creatorId, createdBy, createdAt, owner)) {
+        e =
+            new Entry(
+                username,
+                accountIdResolver.apply(username).orElse(null),
+                creatorId,
+                createdBy,
+                createdAt,
+                owner);
+      }
+      byUsername.put(username, e);
+      if (e.accountId != null) {
+        byAccountId.put(e.accountId, e);
+      }
+    }
+    return new ServiceUserRegistry(blobId, byUsername.build(), byAccountId.buildKeepingLast());
+  }
+
+  @Nullable private final ObjectId blobId;
+  private final ImmutableSortedMap<String, Entry> byUsername;
+  private final ImmutableMap<Account.Id, Entry> byAccountId;
+
+  private ServiceUserRegistry(
+      @Nullable ObjectId blobId,
+      ImmutableSortedMap<String, Entry> byUsername,
+      ImmutableMap<Account.Id, Entry> byAccountId) {
+    this.blobId = blobId;
+    this.byUsername = byUsername;
+    this.byAccountId = byAccountId;
+  }
+
+  /** ID of the {@code serviceuser.db} blob from which this registry was loaded. */
+  @Nullable
+  ObjectId blobId() {
+    return blobId;
+  }
+
+  public Optional<Entry> get(String username) {
+    return Optional.ofNullable(byUsername.get(username));
+  }
+
+  public Optional<Entry> get(Account.Id accountId) {
+    return Optional.ofNullable(byAccountId.get(accountId));
+  }
+
+  public boolean contains(String username) {
+    return byUsername.containsKey(username);
+  }
+
+  /** Returns all service users, sorted by username. */
+  public ImmutableCollection<Entry> all() {
+    return byUsername.values();
+  }
+
+  /** Returns the service users whose username starts with the given prefix, sorted by username. */
+  public ImmutableCollection<Entry> startingWith(String prefix) {
+    if (prefix.isEmpty()) {
+      return all();
+    }
+    return byUsername.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+  }
+
+  public int size() {
+    return byUsername.size();
+  }
+}
@@ -15,83 +15,83 @@
 package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.gerrit.server.api.ApiUtil.asRestApiException;
+import static java.util.Comparator.naturalOrder;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.AccountGroup;
-import com.google.gerrit.entities.GroupDescription;
 import com.google.gerrit.extensions.common.AccountInfo;
-import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.common.GroupInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
-import com.google.gerrit.server.CurrentUser;
-import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.server.account.AccountCache;
-import com.google.gerrit.server.account.AccountResolver;
-import com.google.gerrit.server.account.AccountResolver.UnresolvableAccountException;
+import com.google.gerrit.server.account.AccountLoader;
 import com.google.gerrit.server.account.AccountState;
-import com.google.gerrit.server.account.GroupControl;
-import com.google.gerrit.server.account.GroupMembership;
-import com.google.gerrit.server.group.GroupResolver;
-import com.google.gerrit.server.group.GroupResource;
-import com.google.gerrit.server.restapi.group.ListMembers;
-import com.google.gerrit.server.util.RequestContext;
-import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import org.eclipse.jgit.lib.PersonIdent;
 
 @Singleton
 class ServiceUserResolver {
-  private final AccountResolver resolver;
-  private final IdentifiedUser.GenericFactory genericUserFactory;
-  private final Provider<GetServiceUser> getServiceUser;
-  private final Provider<ListMembers> listMembers;
-  private final ThreadLocalRequestContext tl;
+  private final ServiceUserIdentityIndex identityIndex;
+  private final StorageCache storageCache;
   private final AccountCache accountCache;
-  private final GroupControl.Factory groupControlFactory;
-  private final GroupResolver groupResolver;
+  private final AccountLoader.Factory accountLoader;
+  private final OwnerMembersCache ownerMembersCache;
 
   @Inject
   ServiceUserResolver(
-      AccountResolver resolver,
-      IdentifiedUser.GenericFactory genericUserFactory,
-      Provider<GetServiceUser> getServiceUser,
-      Provider<ListMembers> listMembers,
-      ThreadLocalRequestContext tl,
+      ServiceUserIdentityIndex identityIndex,
+      StorageCache storageCache,
       AccountCache accountCache,
-      GroupControl.Factory groupControlFactory,
-      GroupResolver groupResolver) {
-    this.resolver = resolver;
-    this.genericUserFactory = genericUserFactory;
-    this.getServiceUser = getServiceUser;
-    this.listMembers = listMembers;
-    this.tl = tl;
+      AccountLoader.Factory accountLoader,
+      OwnerMembersCache ownerMembersCache) {
+    this.identityIndex = identityIndex;
+    this.storageCache = storageCache;
     this.accountCache = accountCache;
-    this.groupControlFactory = groupControlFactory;
-    this.groupResolver = groupResolver;
+    this.accountLoader = accountLoader;
+    this.ownerMembersCache = ownerMembersCache;
   }
 
+  /**
+   * Returns the service user with the given committer identity, {@code null} if the committer is
+   * not a service user.
+   *
+   * <p>The returned info is populated from the service user registry and the account cache. The
+   * owner group only has its ID set.
+   */
+  @Nullable
   ServiceUserInfo getAsServiceUser(PersonIdent committerIdent) throws RestApiException {
-    StringBuilder committer = new StringBuilder();
-    committer.append(committerIdent.getName());
-    committer.append(" <");
-    committer.append(committerIdent.getEmailAddress());
-    committer.append("> ");
-
     try {
-      Account account = resolver.resolve(committer.toString()).asUnique().account();
-      return getServiceUser
-          .get()
-          .apply(new ServiceUserResource(genericUserFactory.create(account.id())))
-          .value();
-    } catch (ResourceNotFoundException | UnresolvableAccountException e) {
-      return null;
+      Optional<Account.Id> accountId = identityIndex.resolve(committerIdent);
+      if (!accountId.isPresent()) {
+        return null;
+      }
+      Optional<ServiceUserRegistry.Entry> entry = storageCache.get().get(accountId.get());
+      if (!entry.isPresent()) {
+        return null;
+      }
+
+      AccountLoader al = accountLoader.create(true);
+      AccountInfo account = al.get(accountId.get());
+      AccountInfo creator = al.get(entry.get().creatorId());
+      al.fill();
+      ServiceUserInfo info = new ServiceUserInfo(account);
+      info.createdBy = creator;
+      info.createdAt = entry.get().createdAt();
+      if (entry.get().owner().isPresent()) {
+        info.owner = new GroupInfo();
+        info.owner.id = Url.encode(entry.get().owner().get().get());
+      }
+      return info;
     } catch (Exception e) {
       throw asRestApiException("Cannot get service user", e);
     }
@@ -99,78 +99,66 @@ class ServiceUserResolver {
 
   List<AccountInfo> listOwners(ServiceUserInfo serviceUser)
       throws RestApiException, RuntimeException {
-    if (serviceUser.owner == null) {
-      return Collections.emptyList();
-    }
-
-    RequestContext context =
-        new RequestContext() {
-          @Override
-          public CurrentUser getUser() {
-            return new CurrentUser() {
-
-              @Override
-              public GroupMembership getEffectiveGroups() {
-                return new GroupMembership() {
-                  @Override
-                  public Set<AccountGroup.UUID> intersection(Iterable<AccountGroup.UUID> groupIds) {
-                    return null;
-                  }
+    return toAccountInfos(ownerIds(serviceUser));
+  }
 
-                  @Override
-                  public Set<AccountGroup.UUID> getKnownGroups() {
-                    return null;
-                  }
+  List<AccountInfo> listActiveOwners(ServiceUserInfo serviceUser)
+      throws RestApiException, RuntimeException {
+    List<Account.Id> activeOwners = new ArrayList<>();
+    for (Account.Id owner : ownerIds(serviceUser)) {
+      if (isActive(owner)) {
+        activeOwners.add(owner);
+      }
+    }
+    return toAccountInfos(activeOwners);
+  }
 
-                  @Override
-                  public boolean containsAnyOf(Iterable<AccountGroup.UUID> groupIds) {
-                    return true;
-                  }
+  /**
+   * Returns whether at least one member of the owner group of the given service user is active.
+   *
+   * <p>Stops at the first active member, without loading any account details.
+   */
+  boolean hasActiveOwner(ServiceUserInfo serviceUser) {
+    for (Account.Id owner : ownerIds(serviceUser)) {
+      if (isActive(owner)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-                  @Override
-                  public boolean contains(AccountGroup.UUID groupId) {
-                    return true;
-                  }
-                };
-              }
+  private boolean isActive(Account.Id accountId) {
+    Optional<AccountState> accountState = accountCache.get(accountId);
+    return accountState.isPresent() && accountState.get().account().isActive();
+  }
 
-              @Override
-              public Object getCacheKey() {
-                return null;
-              }
-            };
-          }
-        };
-    RequestContext old = tl.setContext(context);
-    try {
-      GroupDescription.Basic group = groupResolver.parseId(serviceUser.owner.id);
-      GroupControl ctl = groupControlFactory.controlFor(group);
-      ListMembers lm = listMembers.get();
-      GroupResource rsrc = new GroupResource(ctl);
-      lm.setRecursive(true);
-      List<AccountInfo> owners = new ArrayList<>();
-      try {
-        for (AccountInfo a : lm.apply(rsrc).value()) {
-          owners.add(a);
-        }
-      } catch (Exception e) {
-        throw asRestApiException("Cannot list group members", e);
-      }
-      return owners;
-    } finally {
-      tl.setContext(old);
+  private Collection<Account.Id> ownerIds(ServiceUserInfo serviceUser) {
+    if (serviceUser.owner == null) {
+      return Collections.emptyList();
     }
+    return ownerMembersCache.getMembers(AccountGroup.uuid(Url.decode(serviceUser.owner.id)));
   }
 
-  List<AccountInfo> listActiveOwners(ServiceUserInfo serviceUser)
-      throws RestApiException, RuntimeException {
-    List<AccountInfo> activeOwners = new ArrayList<>();
-    for (AccountInfo owner : listOwners(serviceUser)) {
-      Optional<AccountState> accountState = accountCache.get(Account.id(owner._accountId));
-      if (accountState.isPresent() && accountState.get().account().isActive()) {
-        activeOwners.add(owner);
-      }
+  private List<AccountInfo> toAccountInfos(Collection<Account.Id> accountIds)
+      throws RestApiException {
+    if (accountIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    AccountLoader loader = accountLoader.create(true);
+    List<AccountInfo> accounts = new ArrayList<>(accountIds.size());
+    for (Account.Id accountId : accountIds) {
+      accounts.add(loader.get(accountId));
+    }
+    try {
+      loader.fill();
+    } catch (PermissionBackendException e) {
+      throw asRestApiException("Cannot list group members", e);
     }
-    return activeOwners;
+    // Same order as the group members REST endpoint.
+    accounts.sort(
+        Comparator.comparing((AccountInfo a) -> a.name, Comparator.nullsFirst(naturalOrder()))
+            .thenComparing(a -> a.email, Comparator.nullsFirst(naturalOrder()))
+            .thenComparing(a -> a._accountId, Comparator.nullsFirst(naturalOrder())));
+    return accounts;
   }
 }
@@ -28,5 +28,7 @@ class SshModule extends PluginCommandModule {
   protected void configureCommands() {
     command(CreateServiceUserCommand.class);
     command(RegisterServiceUserCommand.class);
+    command(BatchRegisterServiceUsersCommand.class);
+    command(BackfillNotesCommand.class);
   }
 }
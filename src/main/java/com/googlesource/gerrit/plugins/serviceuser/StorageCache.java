@@ -14,19 +14,38 @@
 
 package com.googlesource.gerrit.plugins.serviceuser;
 
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.config.AllProjectsName;
-import com.google.gerrit.server.git.meta.MetaDataUpdate;
-import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.RawParseUtils;
 
 @Singleton
 public class StorageCache {
@@ -39,54 +58,195 @@ public class StorageCache {
     return new CacheModule() {
       @Override
       protected void configure() {
-        cache(CACHE_NAME, Object.class, Config.class).loader(Loader.class);
+        cache(CACHE_NAME, Object.class, Loaded.class).loader(Loader.class);
         bind(StorageCache.class);
       }
     };
   }
 
-  private final LoadingCache<Object, Config> cache;
+  /**
+   * Returns the ID of the {@code serviceuser.db} blob in the tree of the given commit, or {@code
+   * null} if the commit does not exist or does not contain the file.
+   */
+  @Nullable
+  static ObjectId getBlobId(Repository git, @Nullable AnyObjectId commitId, String fileName)
+      throws IOException {
+    if (commitId == null || ObjectId.zeroId().equals(commitId)) {
+      return null;
+    }
+    try (RevWalk rw = new RevWalk(git);
+        TreeWalk tw =
+            TreeWalk.forPath(rw.getObjectReader(), fileName, rw.parseCommit(commitId).getTree())) {
+      return tw != null ? tw.getObjectId(0) : null;
+    }
+  }
+
+  static String fileName(String pluginName) {
+    return pluginName + ".db";
+  }
+
+  /**
+   * A loaded registry. The sequence number orders the loads by the time at which they started, a
+   * load that started later saw all updates of the {@code serviceuser.db} file that an earlier load
+   * saw.
+   */
+  static class Loaded {
+    final ServiceUserRegistry registry;
+    final long sequence;
+
+    Loaded(ServiceUserRegistry registry, long sequence) {
+      this.registry = registry;
+      this.sequence = sequence;
+    }
+  }
+
+  private final LoadingCache<Object, Loaded> cache;
+  private final Loader loader;
+  private final WorkQueue workQueue;
 
   @Inject
-  StorageCache(@Named(CACHE_NAME) LoadingCache<Object, Config> cache) {
+  StorageCache(
+      @Named(CACHE_NAME) LoadingCache<Object, Loaded> cache, Loader loader, WorkQueue workQueue) {
     this.cache = cache;
+    this.loader = loader;
+    this.workQueue = workQueue;
   }
 
-  public Config get() {
+  /**
+   * Returns the service users.
+   *
+   * <p>If loading the service users fails, the registry that was loaded last is returned. Failed
+   * loads are not cached, the next call tries to load the service users again.
+   *
+   * @throws StorageException if the service users cannot be loaded and were never loaded before;
+   *     an empty registry would make all service users look like normal accounts
+   */
+  public ServiceUserRegistry get() {
     try {
-      return cache.get(ALL);
+      return cache.get(ALL).registry;
     } catch (ExecutionException e) {
-      logger.atSevere().withCause(e).log("Cannot load service users");
-      return new Config();
+      ServiceUserRegistry last = loader.last;
+      if (last == null) {
+        throw new StorageException("Cannot load service users", e.getCause());
+      }
+      logger.atSevere().withCause(e).log("Cannot load service users, use last loaded ones");
+      return last;
     }
   }
 
-  public void invalidate() {
-    cache.invalidate(ALL);
+  /**
+   * Loads the service users on the calling thread and swaps them in once they are loaded.
+   *
+   * <p>Must be called after the {@code serviceuser.db} file was updated, so that subsequent
+   * requests see the update. Concurrent readers keep getting the previous registry while the
+   * reload is in progress. If loading fails, the previous registry is kept and a background
+   * refresh is scheduled.
+   */
+  public void reload() {
+    try {
+      publish(loader.load(ALL));
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Cannot reload service users");
+      refresh();
+    }
+  }
+
+  /**
+   * Schedules a reload of the service users in the background. Readers keep getting the previous
+   * registry until the new one is loaded. If loading fails, the previous registry is kept.
+   */
+  public void refresh() {
+    workQueue
+        .getDefaultQueue()
+        .execute(
+            () -> {
+              try {
+                publish(loader.load(ALL));
+              } catch (Exception e) {
+                logger.atWarning().withCause(e).log("Cannot refresh service users");
+              }
+            });
+  }
+
+  /**
+   * Swaps in the given registry, unless a registry of a load that started later was swapped in
+   * already. Concurrent reloads may finish in any order, the registry of the last started load
+   * wins, since it saw all updates of the {@code serviceuser.db} file.
+   */
+  private void publish(Loaded loaded) {
+    cache.asMap().merge(ALL, loaded, (old, l) -> l.sequence > old.sequence ? l : old);
   }
 
-  static class Loader extends CacheLoader<Object, Config> {
-    private final Provider<VersionedConfigFile> configProvider;
-    private final MetaDataUpdate.Server metaDataUpdateFactory;
+  @Singleton
+  static class Loader extends CacheLoader<Object, Loaded> {
+    private final GitRepositoryManager repoManager;
     private final AllProjectsName allProjects;
+    private final AccountCache accountCache;
+    private final String fileName;
+    private final Counter0 loadFailures;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The registry that was loaded last. If the {@code serviceuser.db} blob did not change since,
+     * it is reused as is, otherwise its unchanged entries are carried over to the new registry.
+     */
+    private volatile ServiceUserRegistry last;
 
     @Inject
     Loader(
-        Provider<VersionedConfigFile> configProvider,
-        MetaDataUpdate.Server metaDataUpdateFactory,
-        AllProjectsName allProjects) {
-      this.configProvider = configProvider;
-      this.metaDataUpdateFactory = metaDataUpdateFactory;
+        GitRepositoryManager repoManager,
+        AllProjectsName allProjects,
+        AccountCache accountCache,
+        MetricMaker metricMaker,
+        @PluginName String pluginName) {
+      this.repoManager = repoManager;
       this.allProjects = allProjects;
+      this.accountCache = accountCache;
+      this.fileName = fileName(pluginName);
+      this.loadFailures =
+          metricMaker.newCounter(
+              "storage/load_failure_count",
+              new Description("Number of failed loads of the service users")
+                  .setRate()
+                  .setUnit("failures"));
     }
 
     @Override
-    public Config load(Object key) throws Exception {
-      VersionedConfigFile storage = configProvider.get();
-      try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
-        storage.load(md);
+    public Loaded load(Object key) throws Exception {
+      // Taken before the ref is read, so that a later load has a higher sequence number.
+      long seq = sequence.incrementAndGet();
+      try {
+        return new Loaded(loadRegistry(), seq);
+      } catch (Exception e) {
+        loadFailures.increment();
+        throw e;
+      }
+    }
+
+    private ServiceUserRegistry loadRegistry() throws Exception {
+      ServiceUserRegistry previous = last;
+      try (Repository git = repoManager.openRepository(allProjects)) {
+        Ref ref = git.exactRef(RefNames.REFS_CONFIG);
+        ObjectId blobId = getBlobId(git, ref != null ? ref.getObjectId() : null, fileName);
+        if (previous != null && Objects.equals(previous.blobId(), blobId)) {
+          logger.atFine().log("%s is unchanged, reuse loaded service users", fileName);
+          return previous;
+        }
+
+        Config db = new Config();
+        if (blobId != null) {
+          db.fromText(
+              RawParseUtils.decode(git.open(blobId, OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE)));
+        }
+        ServiceUserRegistry registry =
+            ServiceUserRegistry.parse(
+                blobId,
+                db,
+                previous != null ? previous : ServiceUserRegistry.EMPTY,
+                username -> accountCache.getByUsername(username).map(a -> a.account().id()));
+        last = registry;
+        return registry;
       }
-      return storage.getConfig();
     }
   }
 }
@@ -14,6 +14,8 @@
 
 package com.googlesource.gerrit.plugins.serviceuser;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.account.AccountCache;
@@ -28,7 +30,10 @@ import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInf
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +42,8 @@ class ValidateServiceUserCommits implements CommitValidationListener {
   private static final Logger log = LoggerFactory.getLogger(ValidateServiceUserCommits.class);
   private final ServiceUserResolver serviceUserResolver;
   private final AccountCache accountCache;
+  private final Cache<RevWalk, ConcurrentMap<String, Optional<String>>> rejectionsByPush =
+      CacheBuilder.newBuilder().weakKeys().build();
 
   @Inject
   ValidateServiceUserCommits(ServiceUserResolver serviceUserResolver, AccountCache accountCache) {
@@ -47,41 +54,74 @@ class ValidateServiceUserCommits implements CommitValidationListener {
   @Override
   public List<CommitValidationMessage> onCommitReceived(CommitReceivedEvent receiveEvent)
       throws CommitValidationException {
+    PersonIdent committer = receiveEvent.commit.getCommitterIdent();
+    Optional<String> rejection = getRejection(receiveEvent, committer);
+    if (rejection.isPresent()) {
+      throw new CommitValidationException(
+          String.format(
+              "Commit %s of service user %s (%s) is rejected because %s",
+              receiveEvent.commit.getId().name(),
+              committer.getName(),
+              committer.getEmailAddress(),
+              rejection.get()));
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Returns why commits of the given committer are rejected, empty if they are accepted.
+   *
+   * <p>All commits of a push are validated with the same {@link RevWalk}, hence the result is
+   * memoized per {@link RevWalk} and committer identity, so that each distinct committer is
+   * checked only once per push.
+   */
+  private Optional<String> getRejection(CommitReceivedEvent receiveEvent, PersonIdent committer)
+      throws CommitValidationException {
+    if (receiveEvent.revWalk == null) {
+      return checkCommitter(committer);
+    }
+    ConcurrentMap<String, Optional<String>> rejections =
+        rejectionsByPush
+            .asMap()
+            .computeIfAbsent(receiveEvent.revWalk, rw -> new ConcurrentHashMap<>());
+    String identity = committer.getName() + " <" + committer.getEmailAddress() + ">";
+    Optional<String> rejection = rejections.get(identity);
+    if (rejection == null) {
+      rejection = checkCommitter(committer);
+      rejections.put(identity, rejection);
+    }
+    return rejection;
+  }
+
+  private Optional<String> checkCommitter(PersonIdent committer) throws CommitValidationException {
     try {
-      PersonIdent committer = receiveEvent.commit.getCommitterIdent();
       ServiceUserInfo serviceUser = serviceUserResolver.getAsServiceUser(committer);
       if (serviceUser != null) {
         Optional<AccountState> creator =
             accountCache.get(Account.id(serviceUser.createdBy._accountId));
 
         if (creator.isPresent() && creator.get().account().isActive()) {
-          return Collections.emptyList();
+          return Optional.empty();
         }
 
-        if (!serviceUserResolver.listActiveOwners(serviceUser).isEmpty()) {
-          return Collections.emptyList();
+        if (serviceUserResolver.hasActiveOwner(serviceUser)) {
+          return Optional.empty();
         }
 
         StringBuilder msg = new StringBuilder();
-        msg.append(
-            String.format(
-                "Commit %s of service user %s (%s) is rejected because "
-                    + " the account which created the service user is inactive",
-                receiveEvent.commit.getId().name(),
-                committer.getName(),
-                committer.getEmailAddress()));
+        msg.append(" the account which created the service user is inactive");
 
         if (serviceUser.owner != null) {
           msg.append(" and all accounts in the owner group are inactive");
         }
 
-        throw new CommitValidationException(msg.toString());
+        return Optional.of(msg.toString());
       }
     } catch (RestApiException e) {
       log.error(e.getMessage(), e);
       throw new CommitValidationException(
           "Internal error while checking for service user commits.", e);
     }
-    return Collections.emptyList();
+    return Optional.empty();
   }
 }
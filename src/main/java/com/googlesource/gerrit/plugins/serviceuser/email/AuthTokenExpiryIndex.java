@@ -0,0 +1,191 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.account.AuthToken;
+import com.google.gerrit.server.account.AuthTokenAccessor;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.serviceuser.ServiceUserRegistry;
+import com.googlesource.gerrit.plugins.serviceuser.StorageCache;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+
+/**
+ * Index of the expiration dates of the authentication tokens of the service users.
+ *
+ * <p>The tokens of a service user are read when the index is first queried and again after the
+ * account of the service user was reindexed, e.g. because a token was created or deleted. Queries
+ * for the service users that have tokens expiring in a time window are answered from a sorted set,
+ * without reading the tokens of the other service users.
+ *
+ * <p>The index is kept in memory only. It is built in the background when the plugin starts, so
+ * that the first run of the notifier doesn't have to read the tokens of all service users.
+ */
+@Singleton
+class AuthTokenExpiryIndex implements AccountIndexedListener, LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static class Expiry {
+    static final Comparator<Expiry> ORDER =
+        Comparator.comparing((Expiry e) -> e.expirationDate)
+            .thenComparingInt(e -> e.accountId.get());
+
+    final Instant expirationDate;
+    final Account.Id accountId;
+
+    Expiry(Instant expirationDate, Account.Id accountId) {
+      this.expirationDate = expirationDate;
+      this.accountId = accountId;
+    }
+  }
+
+  private final StorageCache storageCache;
+  private final AuthTokenAccessor tokenAccessor;
+  private final WorkQueue workQueue;
+
+  /** The distinct expiration dates of the tokens of each indexed service user. */
+  private final Map<Account.Id, ImmutableList<Instant>> byAccount = new ConcurrentHashMap<>();
+
+  private final NavigableSet<Expiry> byExpirationDate = new ConcurrentSkipListSet<>(Expiry.ORDER);
+
+  /** Service users that were reindexed since their tokens were read. */
+  private final Set<Account.Id> stale = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  AuthTokenExpiryIndex(
+      StorageCache storageCache, AuthTokenAccessor tokenAccessor, WorkQueue workQueue) {
+    this.storageCache = storageCache;
+    this.tokenAccessor = tokenAccessor;
+    this.workQueue = workQueue;
+  }
+
+  @Override
+  public void start() {
+    workQueue
+        .getDefaultQueue()
+        .execute(
+            () -> {
+              try {
+                update();
+                logger.atFine().log("Indexed tokens of %d service users", byAccount.size());
+              } catch (StorageException e) {
+                // The index is built by the first query.
+                logger.atWarning().withCause(e).log("Cannot index the tokens of service users");
+              }
+            });
+  }
+
+  @Override
+  public void stop() {}
+
+  /**
+   * Returns the service users that have at least one token which expires after {@code from} and
+   * before {@code to}.
+   */
+  synchronized ImmutableSet<Account.Id> getExpiringBetween(Instant from, Instant to) {
+    update();
+
+    ImmutableSet.Builder<Account.Id> result = ImmutableSet.builder();
+    for (Expiry e :
+        byExpirationDate.subSet(
+            new Expiry(from, Account.id(Integer.MAX_VALUE)),
+            false,
+            new Expiry(to, Account.id(Integer.MIN_VALUE)),
+            false)) {
+      result.add(e.accountId);
+    }
+    return result.build();
+  }
+
+  /**
+   * Brings the index up to date with the service users: reads the tokens of the service users that
+   * are not indexed or were reindexed, and removes the accounts that are no longer service users.
+   */
+  private synchronized void update() {
+    ServiceUserRegistry registry = storageCache.get();
+    for (Account.Id accountId : ImmutableList.copyOf(stale)) {
+      stale.remove(accountId);
+      remove(accountId);
+    }
+    for (Account.Id accountId : ImmutableList.copyOf(byAccount.keySet())) {
+      if (!registry.get(accountId).isPresent()) {
+        remove(accountId);
+      }
+    }
+    for (ServiceUserRegistry.Entry serviceUser : registry.all()) {
+      Optional<Account.Id> accountId = serviceUser.accountId();
+      if (accountId.isPresent() && !byAccount.containsKey(accountId.get())) {
+        load(accountId.get());
+      }
+    }
+  }
+
+  @Override
+  public void onAccountIndexed(int id) {
+    Account.Id accountId = Account.id(id);
+    if (storageCache.get().get(accountId).isPresent()) {
+      stale.add(accountId);
+    }
+  }
+
+  private void load(Account.Id accountId) {
+    ImmutableList<Instant> expirationDates;
+    try {
+      expirationDates =
+          tokenAccessor.getTokens(accountId).stream()
+              .map(AuthToken::expirationDate)
+              .filter(Optional::isPresent)
+              .map(Optional::get)
+              .distinct()
+              .collect(toImmutableList());
+    } catch (IOException | ConfigInvalidException e) {
+      // Not indexed, the tokens are read again by the next query.
+      logger.atWarning().withCause(e).log("Cannot read tokens of account %s", accountId);
+      return;
+    }
+    for (Instant expirationDate : expirationDates) {
+      byExpirationDate.add(new Expiry(expirationDate, accountId));
+    }
+    byAccount.put(accountId, expirationDates);
+  }
+
+  private void remove(Account.Id accountId) {
+    ImmutableList<Instant> expirationDates = byAccount.remove(accountId);
+    if (expirationDates != null) {
+      for (Instant expirationDate : expirationDates) {
+        byExpirationDate.remove(new Expiry(expirationDate, accountId));
+      }
+    }
+  }
+}
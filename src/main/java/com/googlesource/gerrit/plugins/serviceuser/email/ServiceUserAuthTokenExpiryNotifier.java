@@ -14,66 +14,108 @@
 
 package com.googlesource.gerrit.plugins.serviceuser.email;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.gerrit.server.mail.EmailFactories.AUTH_TOKEN_WILL_EXPIRE;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.KEY_OWNER;
-import static com.googlesource.gerrit.plugins.serviceuser.CreateServiceUser.USER;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Account;
-import com.google.gerrit.entities.GroupDescription;
-import com.google.gerrit.exceptions.EmailException;
-import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
 import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.account.AccountState;
 import com.google.gerrit.server.account.AuthToken;
 import com.google.gerrit.server.account.AuthTokenAccessor;
-import com.google.gerrit.server.account.GroupControl;
 import com.google.gerrit.server.config.CanonicalWebUrl;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.config.ScheduleConfig;
 import com.google.gerrit.server.config.ScheduleConfig.Schedule;
 import com.google.gerrit.server.git.WorkQueue;
-import com.google.gerrit.server.group.GroupResolver;
-import com.google.gerrit.server.group.GroupResource;
 import com.google.gerrit.server.mail.EmailFactories;
-import com.google.gerrit.server.restapi.group.ListMembers;
-import com.google.gerrit.server.util.ManualRequestContext;
-import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import com.google.inject.Module;
-import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.serviceuser.OwnerMembersCache;
+import com.googlesource.gerrit.plugins.serviceuser.ServiceUserRegistry;
 import com.googlesource.gerrit.plugins.serviceuser.StorageCache;
+import com.googlesource.gerrit.plugins.serviceuser.email.TokenReminderStore.SentReminders;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Config;
 
+/**
+ * Notifies the owners of service users about authentication tokens that will expire soon.
+ *
+ * <p>A reminder is sent when a token expires within one of the configured thresholds, e.g. 30, 7
+ * and 1 days. The reminders that were sent are recorded in the {@link TokenReminderStore}, so each
+ * run sends the reminders that are due and were not sent yet. If runs were missed and several
+ * thresholds of a token are due at once, a single reminder is sent.
+ *
+ * <p>The service users with tokens in the notification window are looked up in the {@link
+ * AuthTokenExpiryIndex}. Only for these service users the tokens are read and the owners are
+ * resolved. The emails are sent on the {@code ServiceUserTokenExpiry} work queue, a failure to
+ * notify about one service user doesn't affect the others.
+ *
+ * <p>The service users are split into shards by the hash of their username. Before a run handles
+ * a shard, it acquires the {@link TokenExpiryLease} of the shard, and releases it when the shard
+ * was handled. If several servers run the notifier, each shard is handled by only one of them at a
+ * time. A run takes one shard at a time, starting at a shard that is derived from the server, so
+ * that the servers split the shards.
+ */
 @Singleton
 public class ServiceUserAuthTokenExpiryNotifier implements Runnable {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
-  private static final long FIRST_NOTIFICATION_BEFORE_EXPIRY = 7L; // 7 days
+  private static final int DEFAULT_REMINDER_DAYS = 7;
+
+  static final String QUEUE_NAME = "ServiceUserTokenExpiry";
 
   private final StorageCache storageCache;
+  private final AuthTokenExpiryIndex expiryIndex;
+  private final TokenReminderStore reminderStore;
   private final AuthTokenAccessor tokenAccessor;
   private final EmailFactories emailFactories;
   private final AccountCache accountCache;
-  private final Provider<ListMembers> listMembers;
-  private final OneOffRequestContext oneOffRequestContext;
-  private final GroupControl.Factory groupControlFactory;
-  private final GroupResolver groupResolver;
+  private final OwnerMembersCache ownerMembersCache;
   private final String canonicalWebUrl;
+  private final TokenExpiryLease lease;
+  private final ImmutableSortedSet<Integer> reminderDays;
+  private final int shards;
+  private final Duration leaseDuration;
+
+  private volatile ScheduledExecutorService executor;
 
   public static Module module() {
     return new LifecycleModule() {
       @Override
       protected void configure() {
+        bind(AuthTokenExpiryIndex.class);
+        listener().to(AuthTokenExpiryIndex.class);
+        bind(TokenReminderStore.class);
+        bind(TokenExpiryLease.class);
+        DynamicSet.bind(binder(), AccountIndexedListener.class).to(AuthTokenExpiryIndex.class);
         bind(ServiceUserAuthTokenExpiryNotifier.class);
         listener().to(ServiceUserAuthTokenExpiryNotifier.Lifecycle.class);
       }
@@ -84,111 +126,277 @@ public class ServiceUserAuthTokenExpiryNotifier implements Runnable {
     private final WorkQueue queue;
     private final ServiceUserAuthTokenExpiryNotifier notifier;
     private final Optional<Schedule> schedule;
+    private final int threads;
 
     @Inject
-    Lifecycle(WorkQueue queue, ServiceUserAuthTokenExpiryNotifier notifier) {
+    Lifecycle(
+        WorkQueue queue,
+        ServiceUserAuthTokenExpiryNotifier notifier,
+        PluginConfigFactory cfgFactory,
+        @GerritServerConfig Config gerritConfig,
+        @PluginName String pluginName) {
       this.queue = queue;
       this.notifier = notifier;
-      schedule = ScheduleConfig.Schedule.create(TimeUnit.DAYS.toMillis(1), "00:00");
+      Optional<Schedule> configured =
+          ScheduleConfig.builder(gerritConfig, "plugin")
+              .setSubsection(pluginName)
+              .setKeyInterval("tokenExpiryInterval")
+              .setKeyStartTime("tokenExpiryStartTime")
+              .buildSchedule();
+      schedule =
+          configured.isPresent()
+              ? configured
+              : ScheduleConfig.Schedule.create(TimeUnit.DAYS.toMillis(1), "00:00");
+      threads =
+          Math.max(
+              1, cfgFactory.getFromGerritConfig(pluginName).getInt("tokenExpiryEmailThreads", 2));
     }
 
     @Override
     public void start() {
+      notifier.executor = queue.createQueue(threads, QUEUE_NAME);
       if (schedule.isPresent()) {
+        // Catch up on the reminders that became due while the server was down.
+        queue.getDefaultQueue().execute(notifier);
         queue.scheduleAtFixedRate(notifier, schedule.get());
       }
     }
 
     @Override
     public void stop() {
-      // handled by WorkQueue.stop() already
+      ScheduledExecutorService e = notifier.executor;
+      notifier.executor = null;
+      if (e != null) {
+        e.shutdownNow();
+      }
     }
   }
 
   @Inject
   public ServiceUserAuthTokenExpiryNotifier(
       StorageCache storageCache,
+      AuthTokenExpiryIndex expiryIndex,
+      TokenReminderStore reminderStore,
+      TokenExpiryLease lease,
       AuthTokenAccessor tokenAccessor,
       EmailFactories emailFactories,
       AccountCache accountCache,
-      Provider<ListMembers> listMembers,
-      OneOffRequestContext oneOffRequestContext,
-      GroupControl.Factory groupControlFactory,
-      GroupResolver groupResolver,
+      OwnerMembersCache ownerMembersCache,
+      PluginConfigFactory cfgFactory,
+      @PluginName String pluginName,
       @CanonicalWebUrl String canonicalWebUrl) {
     this.storageCache = storageCache;
+    this.expiryIndex = expiryIndex;
+    this.reminderStore = reminderStore;
+    this.lease = lease;
     this.tokenAccessor = tokenAccessor;
     this.emailFactories = emailFactories;
     this.accountCache = accountCache;
-    this.listMembers = listMembers;
-    this.oneOffRequestContext = oneOffRequestContext;
-    this.groupControlFactory = groupControlFactory;
-    this.groupResolver = groupResolver;
+    this.ownerMembersCache = ownerMembersCache;
     this.canonicalWebUrl = canonicalWebUrl;
+    PluginConfig cfg = cfgFactory.getFromGerritConfig(pluginName);
+    this.reminderDays = parseReminderDays(cfg.getStringList("tokenExpiryReminder"));
+    this.shards = Math.max(1, cfg.getInt("tokenExpiryShards", 1));
+    this.leaseDuration =
+        Duration.ofMillis(
+            ConfigUtil.getTimeUnit(
+                Strings.nullToEmpty(cfg.getString("tokenExpiryLease")),
+                TimeUnit.HOURS.toMillis(1),
+                TimeUnit.MILLISECONDS));
+  }
+
+  private static ImmutableSortedSet<Integer> parseReminderDays(String[] values) {
+    ImmutableSortedSet.Builder<Integer> days = ImmutableSortedSet.naturalOrder();
+    for (String value : values) {
+      try {
+        int d = Integer.parseInt(value.trim());
+        if (d > 0) {
+          days.add(d);
+          continue;
+        }
+      } catch (NumberFormatException e) {
+        // Logged below.
+      }
+      logger.atWarning().log("Ignoring invalid tokenExpiryReminder value '%s'", value);
+    }
+    ImmutableSortedSet<Integer> result = days.build();
+    return result.isEmpty() ? ImmutableSortedSet.of(DEFAULT_REMINDER_DAYS) : result;
   }
 
   @Override
   public void run() {
-    Instant now = Instant.now();
+    ScheduledExecutorService e = executor;
+    if (e == null) {
+      return;
+    }
+    ServiceUserRegistry registry;
+    try {
+      registry = storageCache.get();
+    } catch (StorageException x) {
+      // Do not fail the run, otherwise the scheduled notifier is cancelled.
+      logger.atSevere().withCause(x).log("Failed to send token expiry reminders");
+      return;
+    }
+
+    // Servers start at different shards and take one shard at a time, so that servers which run
+    // at the same time split the shards between them.
+    int first = Math.floorMod(lease.holder().hashCode(), shards);
+    int handled = 0;
+    for (int i = 0; i < shards; i++) {
+      int shard = (first + i) % shards;
+      Instant now = Instant.now();
+      try {
+        if (!lease.tryAcquire(shard, now, leaseDuration)) {
+          continue;
+        }
+      } catch (IOException | ConfigInvalidException x) {
+        logger.atSevere().withCause(x).log("Failed to acquire the token expiry lease %d", shard);
+        continue;
+      }
+      handled++;
+      try {
+        runShard(e, registry, shard, now);
+      } finally {
+        releaseLease(shard);
+      }
+    }
+    if (handled == 0) {
+      logger.atInfo().log("Token expiry reminders are sent by another server");
+    }
+  }
+
+  private void releaseLease(int shard) {
+    try {
+      lease.release(shard);
+    } catch (IOException | ConfigInvalidException x) {
+      // The lease expires after the lease duration.
+      logger.atWarning().withCause(x).log("Failed to release the token expiry lease %d", shard);
+    }
+  }
+
+  /** Sends the due reminders for the service users of a shard for which the lease is held. */
+  private void runShard(
+      ScheduledExecutorService e, ServiceUserRegistry registry, int shard, Instant now) {
+    // Read after the lease was acquired, so that the reminders recorded by the previous holder
+    // of the lease are seen.
+    ImmutableMap<String, SentReminders> sent;
     try {
-      Config db = storageCache.get();
-      for (String username : db.getSubsections(USER)) {
-        Optional<AccountState> optAccount = accountCache.getByUsername(username);
-        Set<Account.Id> owners = resolveOwners(username, db);
-        if (optAccount.isPresent()) {
-          Account account = optAccount.get().account();
-          for (AuthToken token : tokenAccessor.getTokens(account.id())) {
-            if (token.expirationDate().isEmpty()) {
-              continue;
-            }
-            Instant expirationDate = token.expirationDate().get();
-            if (expirationDate.isBefore(now.plus(FIRST_NOTIFICATION_BEFORE_EXPIRY, ChronoUnit.DAYS))
-                && expirationDate.isAfter(
-                    now.plus(FIRST_NOTIFICATION_BEFORE_EXPIRY - 1, ChronoUnit.DAYS))) {
-              logger.atInfo().log(
-                  "Token %s for account %s is expiring soon.", token.id(), account.id());
-              String authTokenSettingsUrl =
-                  String.format("%sx/serviceuser/user/%d", canonicalWebUrl, account.id().get());
-              emailFactories
-                  .createOutgoingEmail(
-                      AUTH_TOKEN_WILL_EXPIRE,
-                      emailFactories.createAuthTokenWillExpireEmail(
-                          account, token, owners, authTokenSettingsUrl))
-                  .send();
-            }
-          }
+      sent = reminderStore.read();
+    } catch (IOException | ConfigInvalidException x) {
+      logger.atSevere().withCause(x).log("Failed to read the sent token expiry reminders");
+      return;
+    }
+
+    Map<String, SentReminders> newlySent = new ConcurrentHashMap<>();
+    Instant to = now.plus(reminderDays.last(), ChronoUnit.DAYS);
+    List<Future<Boolean>> tasks = new ArrayList<>();
+    for (Account.Id accountId : expiryIndex.getExpiringBetween(now, to)) {
+      Optional<ServiceUserRegistry.Entry> serviceUser = registry.get(accountId);
+      if (serviceUser.isPresent() && shard(serviceUser.get()) == shard) {
+        tasks.add(e.submit(() -> notifyOwners(accountId, now, sent, newlySent)));
+      }
+    }
+
+    int failed = 0;
+    for (Future<Boolean> task : tasks) {
+      try {
+        if (!task.get()) {
+          failed++;
         }
+      } catch (ExecutionException x) {
+        failed++;
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    if (!newlySent.isEmpty()) {
+      try {
+        reminderStore.record(newlySent, now);
+      } catch (IOException | ConfigInvalidException x) {
+        logger.atSevere().withCause(x).log(
+            "Failed to record %d sent token expiry reminders, they will be sent again",
+            newlySent.size());
       }
-    } catch (IOException | ConfigInvalidException e) {
-      throw new RuntimeException("Failed to read accounts from NoteDB", e);
-    } catch (EmailException e) {
-      logger.atSevere().withCause(e).log("Failed to send token expiry notification email");
     }
+    logger.atInfo().log(
+        "Sent %d token expiry reminders for %d service users of shard %d, %d failed",
+        newlySent.size(), tasks.size() - failed, shard, failed);
   }
 
-  private Set<Account.Id> resolveOwners(String username, Config db) throws EmailException {
-    Set<Account.Id> owners = new HashSet<>();
-
-    String ownerGroup = db.getString(USER, username, KEY_OWNER);
-
-    if (ownerGroup != null) {
-      try (ManualRequestContext ctx = oneOffRequestContext.open()) {
-        GroupDescription.Basic group = groupResolver.parseId(ownerGroup);
-        GroupControl ctl = groupControlFactory.controlFor(group);
-        ListMembers lm = listMembers.get();
-        GroupResource rsrc = new GroupResource(ctl);
-        lm.setRecursive(true);
-        try {
-          for (AccountInfo a : lm.apply(rsrc).value()) {
-            owners.add(Account.id(a._accountId));
-          }
-        } catch (Exception e) {
-          throw new EmailException(
-              "Could not compute receipients for serviceuser update notice.", e);
+  /**
+   * Notifies the owners of the given service user about its tokens for which a reminder is due.
+   *
+   * @param sent the reminders that were sent by previous runs
+   * @param newlySent receives the reminders that are sent by this run
+   * @return whether all due reminders were sent
+   */
+  private boolean notifyOwners(
+      Account.Id accountId,
+      Instant now,
+      Map<String, SentReminders> sent,
+      Map<String, SentReminders> newlySent) {
+    try {
+      Optional<ServiceUserRegistry.Entry> serviceUser = storageCache.get().get(accountId);
+      Optional<AccountState> optAccount = accountCache.get(accountId);
+      if (!serviceUser.isPresent() || !optAccount.isPresent()) {
+        return true;
+      }
+      Account account = optAccount.get().account();
+      ImmutableSet<Account.Id> owners = null;
+      for (AuthToken token : tokenAccessor.getTokens(accountId)) {
+        if (token.expirationDate().isEmpty()) {
+          continue;
+        }
+        Instant expirationDate = token.expirationDate().get();
+        if (!expirationDate.isAfter(now)) {
+          continue;
+        }
+        ImmutableSet<Integer> due =
+            reminderDays.stream()
+                .filter(d -> !expirationDate.isAfter(now.plus(d, ChronoUnit.DAYS)))
+                .collect(toImmutableSet());
+        String key = TokenReminderStore.key(accountId, token.id());
+        SentReminders previous = sent.get(key);
+        if (due.isEmpty()
+            || (previous != null
+                && previous.expirationDate.equals(expirationDate)
+                && previous.days.containsAll(due))) {
+          continue;
+        }
+
+        logger.atInfo().log("Token %s for account %s is expiring soon.", token.id(), accountId);
+        if (owners == null) {
+          owners = resolveOwners(serviceUser.get());
         }
+        String authTokenSettingsUrl =
+            String.format("%sx/serviceuser/user/%d", canonicalWebUrl, accountId.get());
+        emailFactories
+            .createOutgoingEmail(
+                AUTH_TOKEN_WILL_EXPIRE,
+                emailFactories.createAuthTokenWillExpireEmail(
+                    account, token, owners, authTokenSettingsUrl))
+            .send();
+        newlySent.put(key, new SentReminders(expirationDate, due));
       }
+      return true;
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log(
+          "Failed to send token expiry notification email for account %s", accountId);
+      return false;
     }
+  }
+
+  /** Returns the shard of the given service user, which is derived from the username. */
+  private int shard(ServiceUserRegistry.Entry serviceUser) {
+    return Math.floorMod(serviceUser.username().hashCode(), shards);
+  }
 
-    return owners;
+  private ImmutableSet<Account.Id> resolveOwners(ServiceUserRegistry.Entry serviceUser) {
+    Optional<AccountGroup.UUID> ownerGroup = serviceUser.owner();
+    return ownerGroup.isPresent()
+        ? ownerMembersCache.getMembers(ownerGroup.get())
+        : ImmutableSet.of();
   }
 }
@@ -28,6 +28,7 @@ public class ServiceUserEmailModule extends FactoryModule {
         .in(SINGLETON);
     factory(ServiceUserUpdatedEmailDecorator.Factory.class);
     factory(ServiceUserOutgoingEmail.Factory.class);
+    install(ServiceUserEmailQueue.module());
     install(ServiceUserAuthTokenExpiryNotifier.module());
   }
 }
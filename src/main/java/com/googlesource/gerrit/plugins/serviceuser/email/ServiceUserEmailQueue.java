@@ -0,0 +1,243 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.exceptions.EmailException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.mail.send.OutgoingEmailFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.serviceuser.OwnerMembersCache;
+import com.googlesource.gerrit.plugins.serviceuser.ServiceUserRegistry;
+import com.googlesource.gerrit.plugins.serviceuser.ServiceUserResource;
+import com.googlesource.gerrit.plugins.serviceuser.StorageCache;
+import com.googlesource.gerrit.plugins.serviceuser.email.ServiceUserUpdatedEmailDecorator.Operation;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the emails about service user updates on a dedicated work queue.
+ *
+ * <p>The operations on a service user are collected for a configurable delay and then reported by
+ * a single email. Operations that are performed while an email for the same service user is still
+ * waiting in the queue are added to the waiting email.
+ *
+ * <p>The service user and the recipients of an email are resolved once when the email is sent,
+ * from the service user registry and the {@link OwnerMembersCache}.
+ */
+@Singleton
+class ServiceUserEmailQueue implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String QUEUE_NAME = "ServiceUserEmails";
+
+  static LifecycleModule module() {
+    return new LifecycleModule() {
+      @Override
+      protected void configure() {
+        bind(ServiceUserEmailQueue.class);
+        listener().to(ServiceUserEmailQueue.class);
+      }
+    };
+  }
+
+  private final ServiceUserUpdatedEmailDecorator.Factory emailDecoratorFactory;
+  private final OutgoingEmailFactory outgoingEmailFactory;
+  private final StorageCache storageCache;
+  private final OwnerMembersCache ownerMembersCache;
+  private final WorkQueue workQueue;
+  private final int threads;
+  private final long delayMillis;
+  private final ConcurrentMap<Account.Id, Task> pending = new ConcurrentHashMap<>();
+
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  ServiceUserEmailQueue(
+      ServiceUserUpdatedEmailDecorator.Factory emailDecoratorFactory,
+      OutgoingEmailFactory outgoingEmailFactory,
+      StorageCache storageCache,
+      OwnerMembersCache ownerMembersCache,
+      WorkQueue workQueue,
+      PluginConfigFactory cfgFactory,
+      @PluginName String pluginName) {
+    this.emailDecoratorFactory = emailDecoratorFactory;
+    this.outgoingEmailFactory = outgoingEmailFactory;
+    this.storageCache = storageCache;
+    this.ownerMembersCache = ownerMembersCache;
+    this.workQueue = workQueue;
+    PluginConfig cfg = cfgFactory.getFromGerritConfig(pluginName);
+    this.threads = Math.max(1, cfg.getInt("emailThreads", 1));
+    this.delayMillis =
+        ConfigUtil.getTimeUnit(
+            Strings.nullToEmpty(cfg.getString("emailDelay")),
+            TimeUnit.SECONDS.toMillis(10),
+            TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void start() {
+    executor = workQueue.createQueue(threads, QUEUE_NAME);
+  }
+
+  /**
+   * Stops the queue. The emails that are still waiting for their delay to pass are sent on the
+   * calling thread, so that no update of a service user goes unreported.
+   */
+  @Override
+  public void stop() {
+    ScheduledExecutorService e = executor;
+    executor = null;
+    if (e != null) {
+      e.shutdownNow();
+    }
+    for (Task task : ImmutableList.copyOf(pending.values())) {
+      try {
+        task.run();
+      } catch (RuntimeException x) {
+        logger.atSevere().withCause(x).log("Failed to send email on shutdown: %s", task);
+      }
+    }
+    pending.clear();
+  }
+
+  /** Schedules an email about the given operation on the given service user. */
+  void submit(ServiceUserResource serviceUser, Operation operation) {
+    Account.Id accountId = serviceUser.getUser().getAccountId();
+    ScheduledExecutorService e = executor;
+    if (e == null) {
+      send(accountId, ImmutableList.of(operation));
+      return;
+    }
+    while (true) {
+      Task task = pending.get(accountId);
+      if (task != null) {
+        if (task.add(operation)) {
+          return;
+        }
+        // The task already started, it will not pick up this operation.
+        pending.remove(accountId, task);
+        continue;
+      }
+      task = new Task(accountId);
+      task.add(operation);
+      if (pending.putIfAbsent(accountId, task) == null) {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError = e.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+  }
+
+  private void send(Account.Id accountId, ImmutableList<Operation> operations) {
+    Optional<ServiceUserRegistry.Entry> serviceUser = storageCache.get().get(accountId);
+    if (!serviceUser.isPresent()) {
+      logger.atWarning().log(
+          "Account %d is not a service user, skip sending email about serviceuser update",
+          accountId.get());
+      return;
+    }
+    try {
+      outgoingEmailFactory
+          .create(
+              "ServiceUserUpdated",
+              emailDecoratorFactory.create(
+                  accountId,
+                  serviceUser.get().username(),
+                  recipients(serviceUser.get()),
+                  operations))
+          .send();
+    } catch (EmailException e) {
+      logger.atSevere().withCause(e).log("Failed to send email about serviceuser update");
+    }
+  }
+
+  /**
+   * Returns the accounts that are notified about updates of the given service user: the members of
+   * the owner group if an owner group is set, otherwise the creator.
+   */
+  private ImmutableSet<Account.Id> recipients(ServiceUserRegistry.Entry serviceUser) {
+    if (serviceUser.owner().isPresent()) {
+      return ownerMembersCache.getMembers(serviceUser.owner().get());
+    }
+    return serviceUser.creatorId().get() > 0
+        ? ImmutableSet.of(serviceUser.creatorId())
+        : ImmutableSet.of();
+  }
+
+  private class Task implements Runnable {
+    private final Account.Id accountId;
+    private final Set<Operation> operations = new LinkedHashSet<>();
+    private boolean started;
+
+    Task(Account.Id accountId) {
+      this.accountId = accountId;
+    }
+
+    /**
+     * Adds the given operation to this task, unless it already started. An operation that was
+     * already added is reported only once.
+     *
+     * @return whether the operation was added to this task
+     */
+    synchronized boolean add(Operation operation) {
+      if (started) {
+        return false;
+      }
+      operations.add(operation);
+      return true;
+    }
+
+    @Override
+    public void run() {
+      ImmutableList<Operation> ops;
+      synchronized (this) {
+        if (started) {
+          // Already sent by the queue or on shutdown.
+          return;
+        }
+        started = true;
+        ops = ImmutableList.copyOf(operations);
+      }
+      pending.remove(accountId, this);
+      send(accountId, ops);
+    }
+
+    @Override
+    public String toString() {
+      synchronized (this) {
+        return String.format(
+            "send-service-user-email %d (%d operations)", accountId.get(), operations.size());
+      }
+    }
+  }
+}
@@ -14,19 +14,19 @@
 
 package com.googlesource.gerrit.plugins.serviceuser.email;
 
-import com.google.common.flogger.FluentLogger;
-import com.google.gerrit.exceptions.EmailException;
-import com.google.gerrit.server.mail.send.OutgoingEmailFactory;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.googlesource.gerrit.plugins.serviceuser.ServiceUserResource;
 import com.googlesource.gerrit.plugins.serviceuser.email.ServiceUserUpdatedEmailDecorator.Operation;
 
+/**
+ * Email about an update of a service user.
+ *
+ * <p>The email is not sent on the calling thread but by the {@link ServiceUserEmailQueue}, which
+ * merges the operations on the same service user into one email.
+ */
 public class ServiceUserOutgoingEmail {
-  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
-
-  private final ServiceUserUpdatedEmailDecorator.Factory emailDecoratorFactory;
-  private final OutgoingEmailFactory outgoingEmailFactory;
+  private final ServiceUserEmailQueue emailQueue;
 
   private final ServiceUserResource serviceUserResource;
   private final Operation operation;
@@ -37,25 +37,16 @@ public class ServiceUserOutgoingEmail {
 
   @AssistedInject
   public ServiceUserOutgoingEmail(
-      ServiceUserUpdatedEmailDecorator.Factory emailDecoratorFactory,
-      OutgoingEmailFactory outgoingEmailFactory,
+      ServiceUserEmailQueue emailQueue,
       @Assisted ServiceUserResource serviceUserResource,
       @Assisted Operation operation) {
-    this.emailDecoratorFactory = emailDecoratorFactory;
-    this.outgoingEmailFactory = outgoingEmailFactory;
+    this.emailQueue = emailQueue;
 
     this.serviceUserResource = serviceUserResource;
     this.operation = operation;
   }
 
   public void send() {
-    try {
-      outgoingEmailFactory
-          .create(
-              "ServiceUserUpdated", emailDecoratorFactory.create(serviceUserResource, operation))
-          .send();
-    } catch (EmailException e) {
-      logger.atSevere().withCause(e).log("Failed to send email about serviceuser update");
-    }
+    emailQueue.submit(serviceUserResource, operation);
   }
 }
@@ -14,31 +14,20 @@
 
 package com.googlesource.gerrit.plugins.serviceuser.email;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.entities.Account;
-import com.google.gerrit.entities.GroupDescription;
 import com.google.gerrit.exceptions.EmailException;
 import com.google.gerrit.extensions.api.changes.RecipientType;
-import com.google.gerrit.extensions.common.AccountInfo;
-import com.google.gerrit.extensions.restapi.RestApiException;
-import com.google.gerrit.server.account.GroupControl;
 import com.google.gerrit.server.config.DefaultUrlFormatter;
-import com.google.gerrit.server.group.GroupResolver;
-import com.google.gerrit.server.group.GroupResource;
 import com.google.gerrit.server.mail.send.MessageIdGenerator;
 import com.google.gerrit.server.mail.send.OutgoingEmail;
 import com.google.gerrit.server.mail.send.OutgoingEmail.EmailDecorator;
-import com.google.gerrit.server.permissions.PermissionBackendException;
-import com.google.gerrit.server.restapi.group.ListMembers;
-import com.google.gerrit.server.util.ManualRequestContext;
-import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.gerrit.server.util.time.TimeUtil;
-import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
-import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser;
-import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
-import com.googlesource.gerrit.plugins.serviceuser.ServiceUserResource;
-import java.io.IOException;
 
 public class ServiceUserUpdatedEmailDecorator implements EmailDecorator {
   public enum Operation {
@@ -63,102 +52,73 @@ public class ServiceUserUpdatedEmailDecorator implements EmailDecorator {
   }
 
   public interface Factory {
+    /**
+     * Creates the decorator for an email about the given operations on a service user.
+     *
+     * @param serviceUser account ID of the service user
+     * @param username username of the service user
+     * @param recipients the accounts that should be notified, i.e. the members of the owner group
+     *     or the creator of the service user
+     * @param operations the operations that were performed on the service user
+     */
     ServiceUserUpdatedEmailDecorator create(
-        ServiceUserResource serviceUserResource, Operation operation);
+        Account.Id serviceUser,
+        String username,
+        ImmutableSet<Account.Id> recipients,
+        ImmutableList<Operation> operations);
   }
 
   private OutgoingEmail email;
 
-  private final Provider<GetServiceUser> getServiceUser;
-  private final Provider<ListMembers> listMembers;
-  private final OneOffRequestContext oneOffRequestContext;
-  private final GroupControl.Factory groupControlFactory;
-  private final GroupResolver groupResolver;
   private final MessageIdGenerator messageIdGenerator;
   private final DefaultUrlFormatter urlFomatter;
 
-  private final ServiceUserResource serviceUserResource;
-  private final Operation operation;
-
-  private ServiceUserInfo serviceUserInfo;
+  private final Account.Id serviceUser;
+  private final String username;
+  private final ImmutableSet<Account.Id> recipients;
+  private final ImmutableList<Operation> operations;
 
   @AssistedInject
   public ServiceUserUpdatedEmailDecorator(
-      Provider<GetServiceUser> getServiceUser,
-      Provider<ListMembers> listMembers,
-      OneOffRequestContext oneOffRequestContext,
-      GroupControl.Factory groupControlFactory,
-      GroupResolver groupResolver,
       MessageIdGenerator messageIdGenerator,
       DefaultUrlFormatter urlFomatter,
-      @Assisted ServiceUserResource serviceUserResource,
-      @Assisted Operation operation) {
-    this.getServiceUser = getServiceUser;
-    this.listMembers = listMembers;
-    this.oneOffRequestContext = oneOffRequestContext;
-    this.groupControlFactory = groupControlFactory;
-    this.groupResolver = groupResolver;
+      @Assisted Account.Id serviceUser,
+      @Assisted String username,
+      @Assisted ImmutableSet<Account.Id> recipients,
+      @Assisted ImmutableList<Operation> operations) {
     this.messageIdGenerator = messageIdGenerator;
     this.urlFomatter = urlFomatter;
 
-    this.serviceUserResource = serviceUserResource;
-    this.operation = operation;
+    this.serviceUser = serviceUser;
+    this.username = username;
+    this.recipients = recipients;
+    this.operations = operations;
   }
 
   @Override
   public void init(OutgoingEmail email) throws EmailException {
     this.email = email;
 
-    try (ManualRequestContext ctx = oneOffRequestContext.open()) {
-      try {
-        serviceUserInfo = getServiceUser.get().apply(serviceUserResource).value();
-      } catch (IOException | RestApiException | PermissionBackendException e) {
-        throw new EmailException(
-            String.format(
-                "Failed to get service user details for %s",
-                serviceUserResource.getUser().getUserName()),
-            e);
-      }
-    }
-
     this.email.setHeader(
         "Subject",
-        String.format(
-            "[Gerrit Code Review] Service User '%s' has been updated.", serviceUserInfo.username));
+        String.format("[Gerrit Code Review] Service User '%s' has been updated.", username));
     this.email.setMessageId(
         messageIdGenerator.fromReasonAccountIdAndTimestamp(
-            "Serviceuser_updated", Account.id(serviceUserInfo._accountId), TimeUtil.now()));
-
-    if (serviceUserInfo.owner == null) {
-      this.email.addByAccountId(RecipientType.TO, Account.id(serviceUserInfo.createdBy._accountId));
-    } else {
-      try (ManualRequestContext ctx = oneOffRequestContext.open()) {
-        GroupDescription.Basic group = groupResolver.parseId(serviceUserInfo.owner.id);
-        GroupControl ctl = groupControlFactory.controlFor(group);
-        ListMembers lm = listMembers.get();
-        GroupResource rsrc = new GroupResource(ctl);
-        lm.setRecursive(true);
-        try {
-          for (AccountInfo a : lm.apply(rsrc).value()) {
-            this.email.addByAccountId(RecipientType.TO, Account.id(a._accountId));
-          }
-        } catch (Exception e) {
-          throw new EmailException(
-              "Could not compute receipients for serviceuser update notice.", e);
-        }
-      }
+            "Serviceuser_updated", serviceUser, TimeUtil.now()));
+
+    for (Account.Id recipient : recipients) {
+      this.email.addByAccountId(RecipientType.TO, recipient);
     }
   }
 
   @Override
   public void populateEmailContent() throws EmailException {
-    email.addSoyEmailDataParam("serviceUserName", serviceUserInfo.username);
-    email.addSoyEmailDataParam("operation", operation.description);
+    email.addSoyEmailDataParam("serviceUserName", username);
+    email.addSoyEmailDataParam(
+        "operations", operations.stream().map(o -> o.description).collect(toImmutableList()));
     email.addSoyEmailDataParam(
         "serviceUserUrl",
-        urlFomatter
-            .getRestUrl(String.format("x/serviceuser/user/%d", serviceUserInfo._accountId))
-            .get());
+        urlFomatter.getRestUrl(String.format("x/serviceuser/user/%d", serviceUser.get())).get());
 
     email.appendText(email.textTemplate("ServiceUserUpdated"));
     if (email.useHtml()) {
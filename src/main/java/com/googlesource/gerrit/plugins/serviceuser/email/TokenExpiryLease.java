@@ -0,0 +1,170 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.git.LockFailureException;
+import com.google.gerrit.server.GerritPersonIdent;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.GerritInstanceId;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Lease that makes sure that only one server runs the token expiry notifier for a shard of the
+ * service users at a time.
+ *
+ * <p>The lease of a shard is stored in the {@code lease.config} file on the {@code
+ * refs/meta/serviceuser/token-expiry-lease/<shard>} branch of the {@code All-Projects} project:
+ *
+ * <pre>
+ * [lease]
+ *   holder = gerrit-1
+ *   acquired = 2026-10-01T00:00:00Z
+ * </pre>
+ *
+ * The branch is updated like any other meta data branch, so the update fires a ref updated event
+ * and is replicated. A server acquires the lease by a commit on top of the version it read, which
+ * fails if another server updated the branch concurrently. In a multi-site setup the update is
+ * coordinated by the global ref database. The lease is released when the shard was handled, if
+ * the server fails to release it, it expires after the lease duration.
+ */
+@Singleton
+class TokenExpiryLease {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String REF_PREFIX = "refs/meta/serviceuser/token-expiry-lease/";
+
+  private static final String FILE_NAME = "lease.config";
+  private static final String SECTION_LEASE = "lease";
+  private static final String KEY_HOLDER = "holder";
+  private static final String KEY_ACQUIRED = "acquired";
+
+  private final MetaDataUpdate.Server metaDataUpdateFactory;
+  private final AllProjectsName allProjects;
+  private final String holder;
+
+  @Inject
+  TokenExpiryLease(
+      MetaDataUpdate.Server metaDataUpdateFactory,
+      AllProjectsName allProjects,
+      @GerritPersonIdent PersonIdent serverIdent,
+      @Nullable @GerritInstanceId String instanceId) {
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.allProjects = allProjects;
+    this.holder = Strings.isNullOrEmpty(instanceId) ? serverIdent.getName() : instanceId;
+  }
+
+  /** Returns the name under which this server holds leases, the instance ID if it is set. */
+  String holder() {
+    return holder;
+  }
+
+  /**
+   * Acquires the lease of the given shard, unless another server acquired it less than {@code
+   * duration} ago and didn't release it yet.
+   *
+   * @return whether the lease was acquired
+   */
+  boolean tryAcquire(int shard, Instant now, Duration duration)
+      throws IOException, ConfigInvalidException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      return tryAcquire(md, load(md, shard), shard, now, duration);
+    }
+  }
+
+  /**
+   * Acquires the lease in the given version of the lease file, if the branch wasn't updated since
+   * the file was loaded.
+   *
+   * @return whether the lease was acquired
+   */
+  @VisibleForTesting
+  boolean tryAcquire(
+      MetaDataUpdate md, VersionedConfigFile file, int shard, Instant now, Duration duration)
+      throws IOException {
+    Config cfg = file.getConfig();
+    Instant acquired = getAcquired(cfg);
+    if (acquired != null && acquired.plus(duration).isAfter(now)) {
+      logger.atFine().log(
+          "Lease %s is held by %s since %s",
+          REF_PREFIX + shard, cfg.getString(SECTION_LEASE, null, KEY_HOLDER), acquired);
+      return false;
+    }
+    cfg.setString(SECTION_LEASE, null, KEY_HOLDER, holder);
+    cfg.setString(SECTION_LEASE, null, KEY_ACQUIRED, now.toString());
+    md.setMessage(String.format("Acquire token expiry lease for %s\n", holder));
+    return commit(md, file, shard);
+  }
+
+  /** Releases the lease of the given shard, if it is still held by this server. */
+  void release(int shard) throws IOException, ConfigInvalidException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile file = load(md, shard);
+      Config cfg = file.getConfig();
+      if (getAcquired(cfg) == null
+          || !holder.equals(cfg.getString(SECTION_LEASE, null, KEY_HOLDER))) {
+        return;
+      }
+      cfg.unset(SECTION_LEASE, null, KEY_ACQUIRED);
+      md.setMessage(String.format("Release token expiry lease for %s\n", holder));
+      commit(md, file, shard);
+    }
+  }
+
+  @VisibleForTesting
+  static VersionedConfigFile load(MetaDataUpdate md, int shard)
+      throws IOException, ConfigInvalidException {
+    VersionedConfigFile file = new VersionedConfigFile(REF_PREFIX + shard, FILE_NAME);
+    file.load(md);
+    return file;
+  }
+
+  private static boolean commit(MetaDataUpdate md, VersionedConfigFile file, int shard)
+      throws IOException {
+    try {
+      file.commit(md);
+      return true;
+    } catch (LockFailureException e) {
+      logger.atFine().log("Lease %s was updated concurrently", REF_PREFIX + shard);
+      return false;
+    }
+  }
+
+  @Nullable
+  private static Instant getAcquired(Config cfg) {
+    String acquired = cfg.getString(SECTION_LEASE, null, KEY_ACQUIRED);
+    if (acquired == null) {
+      return null;
+    }
+    try {
+      return Instant.parse(acquired);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.git.LockFailureException;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Persistent record of the token expiry reminders that have been sent.
+ *
+ * <p>The record is stored in the {@code reminders.config} file on the {@code
+ * refs/meta/serviceuser/token-reminders} branch of the {@code All-Projects} project. For each
+ * token it contains the expiration date of the token and the thresholds, in days before the
+ * expiration, for which a reminder was sent:
+ *
+ * <pre>
+ * [token "1000195/ci-token"]
+ *   expires = 2026-11-01T12:00:00Z
+ *   sent = 30
+ *   sent = 7
+ * </pre>
+ *
+ * Entries of tokens that have expired are removed whenever new reminders are recorded.
+ */
+@Singleton
+class TokenReminderStore {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String REF = "refs/meta/serviceuser/token-reminders";
+
+  private static final String FILE_NAME = "reminders.config";
+  private static final String SECTION_TOKEN = "token";
+  private static final String KEY_EXPIRES = "expires";
+  private static final String KEY_SENT = "sent";
+  private static final int MAX_ATTEMPTS = 5;
+
+  /** The reminders that were sent for one token. */
+  static class SentReminders {
+    final Instant expirationDate;
+    final ImmutableSet<Integer> days;
+
+    SentReminders(Instant expirationDate, ImmutableSet<Integer> days) {
+      this.expirationDate = expirationDate;
+      this.days = days;
+    }
+  }
+
+  static String key(Account.Id accountId, String tokenId) {
+    return accountId.get() + "/" + tokenId;
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final MetaDataUpdate.Server metaDataUpdateFactory;
+  private final AllProjectsName allProjects;
+
+  @Inject
+  TokenReminderStore(
+      GitRepositoryManager repoManager,
+      MetaDataUpdate.Server metaDataUpdateFactory,
+      AllProjectsName allProjects) {
+    this.repoManager = repoManager;
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.allProjects = allProjects;
+  }
+
+  /** Reads the sent reminders, keyed by {@link #key(Account.Id, String)}. */
+  ImmutableMap<String, SentReminders> read() throws IOException, ConfigInvalidException {
+    VersionedConfigFile file = new VersionedConfigFile(REF, FILE_NAME);
+    try (Repository git = repoManager.openRepository(allProjects)) {
+      file.load(allProjects, git);
+    }
+    return parse(file.getConfig());
+  }
+
+  /**
+   * Records that reminders were sent and removes the entries of tokens that expired before {@code
+   * now}, all with a single commit.
+   *
+   * <p>If the branch was updated concurrently, e.g. by another server that sent the reminders for
+   * another shard, the file is loaded again and the reminders are merged into the new version.
+   */
+  void record(Map<String, SentReminders> sent, Instant now)
+      throws IOException, ConfigInvalidException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        tryRecord(sent, now);
+        return;
+      } catch (LockFailureException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        logger.atFine().withCause(e).log(
+            "%s was updated concurrently, retrying (attempt %d)", REF, attempt);
+      }
+    }
+  }
+
+  private void tryRecord(Map<String, SentReminders> sent, Instant now)
+      throws IOException, ConfigInvalidException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(allProjects)) {
+      VersionedConfigFile file = new VersionedConfigFile(REF, FILE_NAME);
+      file.load(md);
+      merge(file.getConfig(), sent, now);
+      md.setMessage(String.format("Record %d token expiry reminders\n", sent.size()));
+      file.commit(md);
+    }
+  }
+
+  /** Parses the sent reminders, keyed by {@link #key(Account.Id, String)}. */
+  static ImmutableMap<String, SentReminders> parse(Config cfg) {
+    ImmutableMap.Builder<String, SentReminders> reminders = ImmutableMap.builder();
+    for (String key : cfg.getSubsections(SECTION_TOKEN)) {
+      Instant expirationDate = getExpirationDate(cfg, key);
+      if (expirationDate != null) {
+        reminders.put(key, new SentReminders(expirationDate, getSent(cfg, key)));
+      }
+    }
+    return reminders.build();
+  }
+
+  /**
+   * Adds the sent reminders to the given config and removes the entries of tokens that expired
+   * before {@code now}. The reminders of a token that was recreated with another expiration date
+   * replace the recorded ones.
+   */
+  static void merge(Config cfg, Map<String, SentReminders> sent, Instant now) {
+    for (String key : cfg.getSubsections(SECTION_TOKEN)) {
+      Instant expirationDate = getExpirationDate(cfg, key);
+      if (expirationDate == null || expirationDate.isBefore(now)) {
+        cfg.unsetSection(SECTION_TOKEN, key);
+      }
+    }
+
+    for (Map.Entry<String, SentReminders> e : sent.entrySet()) {
+      String key = e.getKey();
+      Set<Integer> days = new HashSet<>(e.getValue().days);
+      if (e.getValue().expirationDate.equals(getExpirationDate(cfg, key))) {
+        days.addAll(getSent(cfg, key));
+      }
+      cfg.setString(SECTION_TOKEN, key, KEY_EXPIRES, e.getValue().expirationDate.toString());
+      cfg.setStringList(
+          SECTION_TOKEN,
+          key,
+          KEY_SENT,
+          days.stream().sorted().map(String::valueOf).collect(toImmutableList()));
+    }
+  }
+
+  @Nullable
+  private static Instant getExpirationDate(Config cfg, String key) {
+    String expires = cfg.getString(SECTION_TOKEN, key, KEY_EXPIRES);
+    if (expires == null) {
+      return null;
+    }
+    try {
+      return Instant.parse(expires);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static ImmutableSet<Integer> getSent(Config cfg, String key) {
+    ImmutableSet.Builder<Integer> days = ImmutableSet.builder();
+    for (String d : cfg.getStringList(SECTION_TOKEN, key, KEY_SENT)) {
+      try {
+        days.add(Integer.parseInt(d));
+      } catch (NumberFormatException e) {
+        // Ignore invalid values, at worst a reminder is sent again.
+      }
+    }
+    return days.build();
+  }
+}
@@ -0,0 +1,155 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.acceptance.LightweightPluginDaemonTest;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.UseSsh;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.entities.RefNames;
+import com.google.gson.reflect.TypeToken;
+import java.util.ArrayList;
+import java.util.Map;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+@UseSsh
+@TestPlugin(
+    name = "serviceuser",
+    sysModule = "com.googlesource.gerrit.plugins.serviceuser.Module",
+    sshModule = "com.googlesource.gerrit.plugins.serviceuser.SshModule",
+    httpModule = "com.googlesource.gerrit.plugins.serviceuser.HttpModule")
+public class BatchCreateServiceUsersIT extends LightweightPluginDaemonTest {
+  private static final String SERVICEUSER_BASE_URL = "/config/server/serviceuser~serviceusers/";
+
+  @Test
+  public void serviceUsersAreCreatedWithOneCommit() throws Exception {
+    RevCommit before = metaConfigHead();
+
+    Map<String, BatchCreateServiceUsers.Result> results =
+        batchCreate(name("bot1"), name("bot2"));
+
+    assertThat(results.keySet()).containsExactly(name("bot1"), name("bot2")).inOrder();
+    for (BatchCreateServiceUsers.Result result : results.values()) {
+      assertThat(result.error).isNull();
+      assertThat(result.serviceUser.createdBy._accountId).isEqualTo(admin.id().get());
+      assertThat(result.serviceUser.createdAt).isNotNull();
+    }
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot1")).assertOK();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot2")).assertOK();
+
+    RevCommit after = metaConfigHead();
+    assertThat(after.getParent(0)).isEqualTo(before);
+    assertThat(after.getShortMessage()).isEqualTo("Create 2 service users");
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.serviceuser.block", value = "blocked*")
+  public void invalidInputRejectsWholeBatch() throws Exception {
+    RevCommit before = metaConfigHead();
+
+    RestResponse r =
+        adminRestSession.post(
+            SERVICEUSER_BASE_URL, input(name("valid"), "blockedBot", name("valid"), null));
+    r.assertBadRequest();
+    String errors = r.getEntityContent();
+    assertThat(errors).contains("blockedBot: ");
+    assertThat(errors).contains(name("valid") + ": duplicate username");
+    assertThat(errors).contains("username required");
+
+    adminRestSession.get("/accounts/" + name("valid")).assertNotFound();
+    adminRestSession.get("/accounts/blockedBot").assertNotFound();
+    assertThat(metaConfigHead()).isEqualTo(before);
+  }
+
+  @Test
+  public void existingServiceUserRejectsWholeBatch() throws Exception {
+    adminRestSession.put(SERVICEUSER_BASE_URL + name("existing")).assertCreated();
+    RevCommit before = metaConfigHead();
+
+    adminRestSession
+        .post(SERVICEUSER_BASE_URL, input(name("new"), name("existing")))
+        .assertBadRequest();
+
+    adminRestSession.get("/accounts/" + name("new")).assertNotFound();
+    assertThat(metaConfigHead()).isEqualTo(before);
+  }
+
+  @Test
+  public void failedAccountCreationIsReportedPerServiceUser() throws Exception {
+    // Passes validation, but creating the account fails since the username is taken.
+    accountOperations.newAccount().username(name("taken")).create();
+    RevCommit before = metaConfigHead();
+
+    Map<String, BatchCreateServiceUsers.Result> results =
+        batchCreate(name("first"), name("taken"), name("last"));
+
+    assertThat(results.get(name("first")).serviceUser).isNotNull();
+    assertThat(results.get(name("taken")).serviceUser).isNull();
+    assertThat(results.get(name("taken")).error).isNotNull();
+    assertThat(results.get(name("last")).serviceUser).isNotNull();
+
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("first")).assertOK();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("taken")).assertNotFound();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("last")).assertOK();
+
+    RevCommit after = metaConfigHead();
+    assertThat(after.getParent(0)).isEqualTo(before);
+    assertThat(after.getFullMessage()).doesNotContain(name("taken"));
+  }
+
+  @Test
+  public void emptyBatchIsRejected() throws Exception {
+    adminRestSession.post(SERVICEUSER_BASE_URL, input()).assertBadRequest();
+  }
+
+  @Test
+  public void callerNeedsCapability() throws Exception {
+    userRestSession.post(SERVICEUSER_BASE_URL, input(name("bot"))).assertForbidden();
+  }
+
+  private Map<String, BatchCreateServiceUsers.Result> batchCreate(String... usernames)
+      throws Exception {
+    RestResponse r = adminRestSession.post(SERVICEUSER_BASE_URL, input(usernames));
+    r.assertOK();
+    return newGson()
+        .fromJson(
+            r.getReader(),
+            new TypeToken<Map<String, BatchCreateServiceUsers.Result>>() {}.getType());
+  }
+
+  private static BatchCreateServiceUsers.Input input(String... usernames) {
+    BatchCreateServiceUsers.Input input = new BatchCreateServiceUsers.Input();
+    input.users = new ArrayList<>();
+    for (String username : usernames) {
+      CreateServiceUser.Input in = new CreateServiceUser.Input();
+      in.username = username;
+      input.users.add(in);
+    }
+    return input;
+  }
+
+  private RevCommit metaConfigHead() throws Exception {
+    try (Repository repo = repoManager.openRepository(allProjects);
+        RevWalk rw = new RevWalk(repo)) {
+      return rw.parseCommit(repo.exactRef(RefNames.REFS_CONFIG).getObjectId());
+    }
+  }
+}
@@ -0,0 +1,169 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.acceptance.LightweightPluginDaemonTest;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.UseSsh;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gson.reflect.TypeToken;
+import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+@UseSsh
+@TestPlugin(
+    name = "serviceuser",
+    sysModule = "com.googlesource.gerrit.plugins.serviceuser.Module",
+    sshModule = "com.googlesource.gerrit.plugins.serviceuser.SshModule",
+    httpModule = "com.googlesource.gerrit.plugins.serviceuser.HttpModule")
+public class BatchRegisterServiceUsersIT extends LightweightPluginDaemonTest {
+  private static final String SERVICEUSER_BASE_URL = "/config/server/serviceuser~serviceusers/";
+  private static final String REGISTER_URL = "/config/server/serviceuser~register";
+
+  @Test
+  public void accountsAreRegisteredWithOneCommit() throws Exception {
+    Account.Id bot1 = accountOperations.newAccount().username(name("bot1")).create();
+    Account.Id bot2 = accountOperations.newAccount().username(name("bot2")).create();
+    RevCommit before = head(allProjects, RefNames.REFS_CONFIG);
+
+    Map<String, ServiceUserInfo> registered = register(name("bot1"), name("bot2"));
+
+    assertThat(registered.keySet()).containsExactly(name("bot1"), name("bot2")).inOrder();
+    assertThat(registered.get(name("bot1"))._accountId).isEqualTo(bot1.get());
+    assertThat(registered.get(name("bot2"))._accountId).isEqualTo(bot2.get());
+    assertThat(registered.get(name("bot1")).createdBy._accountId).isEqualTo(admin.id().get());
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot1")).assertOK();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot2")).assertOK();
+
+    RevCommit after = head(allProjects, RefNames.REFS_CONFIG);
+    assertThat(after.getParent(0)).isEqualTo(before);
+    assertThat(after.getShortMessage()).isEqualTo("Register 2 service users");
+  }
+
+  @Test
+  public void invalidUsernameRejectsWholeBatch() throws Exception {
+    accountOperations.newAccount().username(name("bot")).create();
+    RevCommit before = head(allProjects, RefNames.REFS_CONFIG);
+
+    RestResponse r = adminRestSession.post(REGISTER_URL, input(name("bot"), name("missing")));
+    r.assertBadRequest();
+    assertThat(r.getEntityContent()).contains(name("missing") + ": Username does not exist");
+
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot")).assertNotFound();
+    assertThat(head(allProjects, RefNames.REFS_CONFIG)).isEqualTo(before);
+  }
+
+  @Test
+  public void registeredServiceUsersAreSkipped() throws Exception {
+    accountOperations.newAccount().username(name("old")).create();
+    accountOperations.newAccount().username(name("new")).create();
+    register(name("old"));
+    RevCommit before = head(allProjects, RefNames.REFS_CONFIG);
+
+    Map<String, ServiceUserInfo> registered = register(name("old"), name("new"), name("new"));
+
+    assertThat(registered.keySet()).containsExactly(name("new"));
+    RevCommit after = head(allProjects, RefNames.REFS_CONFIG);
+    assertThat(after.getParent(0)).isEqualTo(before);
+    assertThat(after.getShortMessage()).isEqualTo("Register 1 service users");
+
+    assertThat(register(name("old"), name("new"))).isEmpty();
+    assertThat(head(allProjects, RefNames.REFS_CONFIG)).isEqualTo(after);
+  }
+
+  @Test
+  @GerritConfig(
+      name = "plugin.serviceuser.group",
+      values = {"Batch Service Users", "Batch Bots"})
+  public void eachConfiguredGroupIsUpdatedOnce() throws Exception {
+    AccountGroup.UUID group1 = groupOperations.newGroup().name("Batch Service Users").create();
+    AccountGroup.UUID group2 = groupOperations.newGroup().name("Batch Bots").create();
+    Account.Id bot1 = accountOperations.newAccount().username(name("bot1")).create();
+    Account.Id bot2 = accountOperations.newAccount().username(name("bot2")).create();
+    Account.Id bot3 = accountOperations.newAccount().username(name("bot3")).create();
+    RevCommit before1 = head(allUsers, RefNames.refsGroups(group1));
+    RevCommit before2 = head(allUsers, RefNames.refsGroups(group2));
+
+    register(name("bot1"), name("bot2"), name("bot3"));
+
+    assertThat(head(allUsers, RefNames.refsGroups(group1)).getParent(0)).isEqualTo(before1);
+    assertThat(head(allUsers, RefNames.refsGroups(group2)).getParent(0)).isEqualTo(before2);
+    assertThat(groupOperations.group(group1).get().members()).containsExactly(bot1, bot2, bot3);
+    assertThat(groupOperations.group(group2).get().members()).containsExactly(bot1, bot2, bot3);
+  }
+
+  @Test
+  public void registerBatchCommandReadsUsernamesFromStdin() throws Exception {
+    accountOperations.newAccount().username(name("bot1")).create();
+    accountOperations.newAccount().username(name("bot2")).create();
+    accountOperations.newAccount().username(name("bot3")).create();
+
+    String stdin = name("bot2") + "\n\n" + name("bot3") + "\n";
+    String out =
+        adminSshSession.exec(
+            "serviceuser register-batch --stdin " + name("bot1"),
+            new ByteArrayInputStream(stdin.getBytes(UTF_8)));
+    adminSshSession.assertSuccess();
+    assertThat(out).contains("3 service users registered");
+
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot1")).assertOK();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot2")).assertOK();
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot3")).assertOK();
+  }
+
+  @Test
+  public void registerBatchCommandFailsOnInvalidUsername() throws Exception {
+    accountOperations.newAccount().username(name("bot")).create();
+
+    adminSshSession.exec("serviceuser register-batch " + name("bot") + " " + name("missing"));
+    adminSshSession.assertFailure(name("missing") + ": Username does not exist");
+
+    adminRestSession.get(SERVICEUSER_BASE_URL + name("bot")).assertNotFound();
+  }
+
+  private Map<String, ServiceUserInfo> register(String... usernames) throws Exception {
+    RestResponse r = adminRestSession.post(REGISTER_URL, input(usernames));
+    r.assertOK();
+    return newGson()
+        .fromJson(r.getReader(), new TypeToken<Map<String, ServiceUserInfo>>() {}.getType());
+  }
+
+  private static BatchRegisterServiceUsers.Input input(String... usernames) {
+    BatchRegisterServiceUsers.Input input = new BatchRegisterServiceUsers.Input();
+    input.usernames = List.of(usernames);
+    return input;
+  }
+
+  private RevCommit head(Project.NameKey project, String ref) throws Exception {
+    try (Repository repo = repoManager.openRepository(project);
+        RevWalk rw = new RevWalk(repo)) {
+      return rw.parseCommit(repo.exactRef(ref).getObjectId());
+    }
+  }
+}
@@ -15,10 +15,12 @@
 package com.googlesource.gerrit.plugins.serviceuser;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.when;
 
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
+import java.util.regex.PatternSyntaxException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -86,4 +88,68 @@ public class BlockedNameFilterTest {
     assertThat(blockedNameFilter.isBlocked("abc")).isTrue();
     assertThat(blockedNameFilter.isBlocked("ABC")).isTrue();
   }
+
+  @Test
+  public void regexWithBackReferenceIsMatchedSeparately() {
+    when(config.getStringList("block")).thenReturn(new String[] {"^(x)\\1", "^y+$"});
+    blockedNameFilter.reload();
+
+    assertThat(blockedNameFilter.isBlocked("xx")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("xy")).isFalse();
+    assertThat(blockedNameFilter.isBlocked("yyy")).isTrue();
+  }
+
+  @Test
+  public void regexThatCannotBeCombinedIsMatchedSeparately() {
+    // The comment swallows the closing parenthesis when the regexes are combined.
+    String[] blockedNames = new String[] {"^(?x)bot # comment", "^y+$"};
+    when(config.getStringList("block")).thenReturn(blockedNames);
+    blockedNameFilter.reload();
+
+    assertThat(blockedNameFilter.isBlocked("bot1")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("yyy")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("xbot")).isFalse();
+
+    blockedNameFilter.set(BlockedNameFilter.compile(blockedNames));
+    assertThat(blockedNameFilter.isBlocked("bot1")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("yyy")).isTrue();
+  }
+
+  @Test
+  public void reloadReplacesRules() {
+    assertThat(blockedNameFilter.isBlocked("exact")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("new")).isFalse();
+
+    when(config.getStringList("block")).thenReturn(new String[] {"new"});
+    blockedNameFilter.reload();
+
+    assertThat(blockedNameFilter.isBlocked("exact")).isFalse();
+    assertThat(blockedNameFilter.isBlocked("wildcard")).isFalse();
+    assertThat(blockedNameFilter.isBlocked("regex1")).isFalse();
+    assertThat(blockedNameFilter.isBlocked("new")).isTrue();
+  }
+
+  @Test
+  public void compileRejectsInvalidRegex() {
+    assertThrows(
+        PatternSyntaxException.class,
+        () -> BlockedNameFilter.compile(new String[] {"exact", "^regex[0-9"}));
+  }
+
+  @Test
+  public void setReplacesRules() {
+    blockedNameFilter.set(BlockedNameFilter.compile(new String[] {"new*"}));
+
+    assertThat(blockedNameFilter.isBlocked("exact")).isFalse();
+    assertThat(blockedNameFilter.isBlocked("newbot")).isTrue();
+  }
+
+  @Test
+  public void reloadIgnoresInvalidRegex() {
+    when(config.getStringList("block")).thenReturn(new String[] {"^regex[0-9", "exact"});
+    blockedNameFilter.reload();
+
+    assertThat(blockedNameFilter.isBlocked("exact")).isTrue();
+    assertThat(blockedNameFilter.isBlocked("regex1")).isFalse();
+  }
 }
@@ -0,0 +1,54 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.extensions.common.AccountInfo;
+import java.time.Instant;
+import java.time.ZoneId;
+import org.junit.Test;
+
+public class HeaderFormatterTest {
+  private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+  private static final Instant DATE = Instant.parse("2013-11-13T13:31:11Z");
+
+  private final HeaderFormatter fmt = new HeaderFormatter(ZONE, "Anonymous Coward");
+
+  @Test
+  public void formatDate() {
+    assertThat(HeaderFormatter.formatDate(DATE, ZONE)).isEqualTo("Wed, 13 Nov 2013 14:31:11 +0100");
+  }
+
+  @Test
+  public void appendToBuffer() {
+    AccountInfo creator = new AccountInfo(42);
+    creator.name = "John Doe";
+    creator.email = "jdoe@example.com";
+
+    StringBuilder sb = new StringBuilder();
+    fmt.appendDate(sb, DATE);
+    fmt.append(sb, "Project", "foo");
+    fmt.appendUser(sb, "Created-By", creator);
+    fmt.appendUser(sb, "Owner", new AccountInfo(43));
+
+    assertThat(sb.toString())
+        .isEqualTo(
+            "Date: Wed, 13 Nov 2013 14:31:11 +0100\n"
+                + "Project: foo\n"
+                + "Created-By: John Doe <jdoe@example.com>\n"
+                + "Owner: Anonymous Coward #43\n");
+  }
+}
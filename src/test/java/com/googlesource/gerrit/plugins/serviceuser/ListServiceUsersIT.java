@@ -0,0 +1,182 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Iterables;
+import com.google.gerrit.acceptance.LightweightPluginDaemonTest;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.UseSsh;
+import com.google.gson.reflect.TypeToken;
+import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+@UseSsh
+@TestPlugin(
+    name = "serviceuser",
+    sysModule = "com.googlesource.gerrit.plugins.serviceuser.Module",
+    sshModule = "com.googlesource.gerrit.plugins.serviceuser.SshModule",
+    httpModule = "com.googlesource.gerrit.plugins.serviceuser.HttpModule")
+public class ListServiceUsersIT extends LightweightPluginDaemonTest {
+  private static final String SERVICEUSER_BASE_URL = "/config/server/serviceuser~serviceusers/";
+
+  @Test
+  public void pagesAcrossAccountBatches() throws Exception {
+    List<String> usernames = new ArrayList<>();
+    for (int i = 0; i < 105; i++) {
+      usernames.add(name(String.format("bot%03d", i)));
+    }
+    createServiceUsers(usernames);
+
+    Map<String, ServiceUserInfo> page = list("n=3&S=99");
+    assertThat(page.keySet())
+        .containsExactly(usernames.get(99), usernames.get(100), usernames.get(101))
+        .inOrder();
+    assertThat(Iterables.getLast(page.values())._moreAccounts).isTrue();
+
+    page = list("n=3&S=102");
+    assertThat(page.keySet())
+        .containsExactly(usernames.get(102), usernames.get(103), usernames.get(104))
+        .inOrder();
+    assertThat(Iterables.getLast(page.values())._moreAccounts).isNull();
+
+    page = list("n=100");
+    assertThat(page).hasSize(100);
+    assertThat(Iterables.getLast(page.keySet())).isEqualTo(usernames.get(99));
+    assertThat(Iterables.getLast(page.values())._moreAccounts).isTrue();
+
+    page = list("n=100&S=100");
+    assertThat(page.keySet()).containsExactlyElementsIn(usernames.subList(100, 105)).inOrder();
+    assertThat(Iterables.getLast(page.values())._moreAccounts).isNull();
+
+    assertThat(list("S=105")).isEmpty();
+    assertThat(list("")).hasSize(105);
+  }
+
+  @Test
+  public void negativeLimitOrStartIsRejected() throws Exception {
+    adminRestSession.get(listUrl("n=-1")).assertBadRequest();
+    adminRestSession.get(listUrl("S=-1")).assertBadRequest();
+  }
+
+  @Test
+  public void filterByPrefix() throws Exception {
+    createServiceUsers(List.of(name("alpha1"), name("alpha2"), name("beta1")));
+
+    assertThat(list("p=" + name("alpha")).keySet())
+        .containsExactly(name("alpha1"), name("alpha2"))
+        .inOrder();
+    assertThat(list("p=" + name("gamma"))).isEmpty();
+  }
+
+  @Test
+  public void filterByOwner() throws Exception {
+    createServiceUsers(List.of(name("owned"), name("unowned")));
+    String group = name("owners");
+    adminRestSession.put("/groups/" + group).assertCreated();
+    PutOwner.Input ownerInput = new PutOwner.Input();
+    ownerInput.group = group;
+    adminRestSession
+        .put(SERVICEUSER_BASE_URL + name("owned") + "/owner", ownerInput)
+        .assertCreated();
+
+    assertThat(list("owner=" + group).keySet()).containsExactly(name("owned"));
+    adminRestSession.get(listUrl("owner=" + name("missing"))).assertBadRequest();
+  }
+
+  @Test
+  public void filterByCreator() throws Exception {
+    createServiceUsers(List.of(name("byAdmin")));
+    accountOperations.newAccount().username(name("byUser")).create();
+    BatchRegisterServiceUsers.Input input = new BatchRegisterServiceUsers.Input();
+    input.usernames = List.of(name("byUser"));
+    input.creator = user.username();
+    adminRestSession.post("/config/server/serviceuser~register", input).assertOK();
+
+    assertThat(list("creator=" + user.username()).keySet()).containsExactly(name("byUser"));
+    assertThat(list("creator=" + user.id().get()).keySet()).containsExactly(name("byUser"));
+    assertThat(list("creator=" + admin.username()).keySet()).containsExactly(name("byAdmin"));
+  }
+
+  @Test
+  public void filterByActiveState() throws Exception {
+    createServiceUsers(List.of(name("active"), name("inactive")));
+    adminRestSession.delete(SERVICEUSER_BASE_URL + name("inactive") + "/active").assertNoContent();
+
+    Map<String, ServiceUserInfo> active = list("active");
+    assertThat(active.keySet()).containsExactly(name("active"));
+    assertThat(active.get(name("active")).inactive).isNull();
+
+    Map<String, ServiceUserInfo> inactive = list("inactive");
+    assertThat(inactive.keySet()).containsExactly(name("inactive"));
+    assertThat(inactive.get(name("inactive")).inactive).isTrue();
+
+    assertThat(list("").keySet()).containsExactly(name("active"), name("inactive"));
+    adminRestSession.get(listUrl("active&inactive")).assertBadRequest();
+  }
+
+  @Test
+  public void filterByCreationDate() throws Exception {
+    createServiceUsers(List.of(name("bot")));
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    assertThat(list("created-after=" + today).keySet()).containsExactly(name("bot"));
+    assertThat(list("created-after=" + today.plusDays(1))).isEmpty();
+    assertThat(list("created-before=" + today.plusDays(1)).keySet()).containsExactly(name("bot"));
+    assertThat(list("created-before=" + today)).isEmpty();
+    assertThat(
+            list(
+                    "created-after="
+                        + today.atStartOfDay(ZoneOffset.UTC).toInstant()
+                        + "&created-before="
+                        + today.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant())
+                .keySet())
+        .containsExactly(name("bot"));
+    adminRestSession.get(listUrl("created-after=yesterday")).assertBadRequest();
+  }
+
+  private void createServiceUsers(List<String> usernames) throws Exception {
+    BatchCreateServiceUsers.Input input = new BatchCreateServiceUsers.Input();
+    input.users = new ArrayList<>();
+    for (String username : usernames) {
+      CreateServiceUser.Input in = new CreateServiceUser.Input();
+      in.username = username;
+      input.users.add(in);
+    }
+    adminRestSession.post(SERVICEUSER_BASE_URL, input).assertOK();
+  }
+
+  /** Lists the service users of this test, unless the query sets another prefix. */
+  private String listUrl(String query) {
+    if (!query.startsWith("p=")) {
+      query = "p=" + resourcePrefix + (query.isEmpty() ? "" : "&" + query);
+    }
+    return SERVICEUSER_BASE_URL + "?" + query;
+  }
+
+  private Map<String, ServiceUserInfo> list(String query) throws Exception {
+    RestResponse r = adminRestSession.get(listUrl(query));
+    r.assertOK();
+    return newGson()
+        .fromJson(r.getReader(), new TypeToken<Map<String, ServiceUserInfo>>() {}.getType());
+  }
+}
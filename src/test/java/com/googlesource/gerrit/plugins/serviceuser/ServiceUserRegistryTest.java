@@ -0,0 +1,103 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceUserRegistryTest {
+  private static final Account.Id BOT_ID = Account.id(1000);
+
+  private ServiceUserRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    Config db = new Config();
+    db.fromText(
+        "[user \"bot\"]\n"
+            + "  creatorId = 42\n"
+            + "  createdBy = jdoe\n"
+            + "  createdAt = Wed, 13 Nov 2013 14:31:11 +0100\n"
+            + "  owner = abcdef\n"
+            + "[user \"unknown\"]\n"
+            + "  createdBy = jroe\n");
+    registry =
+        ServiceUserRegistry.parse(
+            db, username -> username.equals("bot") ? Optional.of(BOT_ID) : Optional.empty());
+  }
+
+  @Test
+  public void lookupByUsername() {
+    ServiceUserRegistry.Entry bot = registry.get("bot").get();
+    assertThat(bot.creatorId()).isEqualTo(Account.id(42));
+    assertThat(bot.createdBy()).isEqualTo("jdoe");
+    assertThat(bot.createdAt()).isEqualTo("Wed, 13 Nov 2013 14:31:11 +0100");
+    assertThat(bot.owner().get()).isEqualTo(AccountGroup.uuid("abcdef"));
+    assertThat(registry.contains("unknown")).isTrue();
+    assertThat(registry.contains("other")).isFalse();
+  }
+
+  @Test
+  public void lookupByAccountId() {
+    assertThat(registry.get(BOT_ID).get().username()).isEqualTo("bot");
+    assertThat(registry.get("unknown").get().accountId().isPresent()).isFalse();
+  }
+
+  @Test
+  public void missingPropertiesUseDefaults() {
+    ServiceUserRegistry.Entry unknown = registry.get("unknown").get();
+    assertThat(unknown.creatorId()).isEqualTo(Account.id(-1));
+    assertThat(unknown.owner().isPresent()).isFalse();
+    assertThat(unknown.createdAt()).isNull();
+  }
+
+  @Test
+  public void unchangedEntriesAreReused() throws Exception {
+    Config db = new Config();
+    db.fromText(
+        "[user \"bot\"]\n"
+            + "  creatorId = 42\n"
+            + "  createdBy = jdoe\n"
+            + "  createdAt = Wed, 13 Nov 2013 14:31:11 +0100\n"
+            + "  owner = abcdef\n"
+            + "[user \"bot2\"]\n"
+            + "  creatorId = 42\n");
+    ServiceUserRegistry reloaded =
+        ServiceUserRegistry.parse(
+            ObjectId.zeroId(), db, registry, username -> Optional.of(Account.id(2000)));
+
+    assertThat(reloaded.get("bot").get()).isSameInstanceAs(registry.get("bot").get());
+    assertThat(reloaded.get("bot2").get().accountId().get()).isEqualTo(Account.id(2000));
+    assertThat(reloaded.contains("unknown")).isFalse();
+  }
+
+  @Test
+  public void allIsSortedByUsername() {
+    assertThat(
+            registry.all().stream()
+                .map(ServiceUserRegistry.Entry::username)
+                .collect(Collectors.toList()))
+        .containsExactly("bot", "unknown")
+        .inOrder();
+  }
+}
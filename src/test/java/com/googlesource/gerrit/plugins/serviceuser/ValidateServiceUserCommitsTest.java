@@ -18,6 +18,8 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.gerrit.entities.Account;
@@ -28,7 +30,6 @@ import com.google.gerrit.server.account.AccountState;
 import com.google.gerrit.server.events.CommitReceivedEvent;
 import com.google.gerrit.server.git.validators.CommitValidationException;
 import com.googlesource.gerrit.plugins.serviceuser.GetServiceUser.ServiceUserInfo;
-import java.util.Collections;
 import java.util.Optional;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
@@ -44,7 +45,6 @@ import org.mockito.junit.MockitoJUnitRunner;
 public class ValidateServiceUserCommitsTest {
   private static final Account.Id SERVICE_USER_ACCOUNT_ID = Account.id(100);
   private static final Account.Id CREATOR_ACCOUNT_ID = Account.id(200);
-  private static final Account.Id OWNER_ACCOUNT_ID = Account.id(300);
 
   @Mock ServiceUserResolver resolver;
   @Mock AccountCache accountCache;
@@ -113,6 +113,18 @@ public class ValidateServiceUserCommitsTest {
     assertThat(validator.onCommitReceived(event)).isEmpty();
   }
 
+  @Test
+  public void sameCommitterInOnePush_checkedOnce() throws Exception {
+    ServiceUserInfo serviceUser = setupWithInactiveCreator();
+    ownerGroupNotSet(serviceUser);
+    event.revWalk = testRepo.getRevWalk();
+    assertThrows(CommitValidationException.class, () -> validator.onCommitReceived(event));
+
+    event.commit = testRepo.commit().committer(serviceUserIdent).create();
+    assertThrows(CommitValidationException.class, () -> validator.onCommitReceived(event));
+    verify(resolver, times(1)).getAsServiceUser(serviceUserIdent);
+  }
+
   private ServiceUserInfo setupWithNonExistingCreator() throws Exception {
     ServiceUserInfo serviceUser = new ServiceUserInfo(serviceUserAccountInfo);
     when(resolver.getAsServiceUser(serviceUserIdent)).thenReturn(serviceUser);
@@ -153,13 +165,11 @@ public class ValidateServiceUserCommitsTest {
   private void ownerGroupSetButContainsNoActiveMembers(ServiceUserInfo serviceUser)
       throws Exception {
     serviceUser.owner = new GroupInfo();
-    lenient().when(resolver.listActiveOwners(serviceUser)).thenReturn(Collections.emptyList());
+    lenient().when(resolver.hasActiveOwner(serviceUser)).thenReturn(false);
   }
 
   private void ownerGroupSetAndContainsActiveMembers(ServiceUserInfo serviceUser) throws Exception {
     serviceUser.owner = new GroupInfo();
-    lenient()
-        .when(resolver.listActiveOwners(serviceUser))
-        .thenReturn(Collections.singletonList(new AccountInfo(OWNER_ACCOUNT_ID.get())));
+    lenient().when(resolver.hasActiveOwner(serviceUser)).thenReturn(true);
   }
 }
@@ -0,0 +1,154 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedConfigFile;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenExpiryLeaseTest {
+  private static final AllProjectsName ALL_PROJECTS = new AllProjectsName("All-Projects");
+  private static final PersonIdent SERVER_IDENT = new PersonIdent("Gerrit", "gerrit@example.com");
+  private static final Instant NOW = Instant.parse("2026-10-01T12:00:00Z");
+  private static final Duration DURATION = Duration.ofHours(1);
+
+  private InMemoryRepositoryManager repoManager;
+  private MetaDataUpdate.Server metaDataUpdateFactory;
+  private TokenExpiryLease serverA;
+  private TokenExpiryLease serverB;
+
+  @Before
+  public void setUp() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    repoManager.createRepository(ALL_PROJECTS);
+    metaDataUpdateFactory = mock(MetaDataUpdate.Server.class);
+    when(metaDataUpdateFactory.create(ALL_PROJECTS)).thenAnswer(i -> newMetaDataUpdate());
+    serverA = newLease("server-a");
+    serverB = newLease("server-b");
+  }
+
+  @Test
+  public void leaseIsHeldForItsDuration() throws Exception {
+    assertThat(serverA.tryAcquire(0, NOW, DURATION)).isTrue();
+    assertThat(holder(0)).isEqualTo("server-a");
+
+    assertThat(serverB.tryAcquire(0, NOW.plus(Duration.ofMinutes(59)), DURATION)).isFalse();
+    assertThat(serverA.tryAcquire(0, NOW.plus(Duration.ofMinutes(59)), DURATION)).isFalse();
+    assertThat(holder(0)).isEqualTo("server-a");
+  }
+
+  @Test
+  public void expiredLeaseCanBeAcquired() throws Exception {
+    assertThat(serverA.tryAcquire(0, NOW, DURATION)).isTrue();
+
+    assertThat(serverB.tryAcquire(0, NOW.plus(DURATION), DURATION)).isTrue();
+    assertThat(holder(0)).isEqualTo("server-b");
+  }
+
+  @Test
+  public void releasedLeaseCanBeAcquired() throws Exception {
+    assertThat(serverA.tryAcquire(0, NOW, DURATION)).isTrue();
+    serverA.release(0);
+
+    assertThat(serverB.tryAcquire(0, NOW, DURATION)).isTrue();
+    assertThat(holder(0)).isEqualTo("server-b");
+  }
+
+  @Test
+  public void leaseOfAnotherServerIsNotReleased() throws Exception {
+    assertThat(serverA.tryAcquire(0, NOW, DURATION)).isTrue();
+    serverB.release(0);
+
+    assertThat(serverB.tryAcquire(0, NOW, DURATION)).isFalse();
+    assertThat(holder(0)).isEqualTo("server-a");
+  }
+
+  @Test
+  public void releasingLeaseThatIsNotHeldIsNoop() throws Exception {
+    serverA.release(0);
+
+    assertThat(serverB.tryAcquire(0, NOW, DURATION)).isTrue();
+  }
+
+  @Test
+  public void shardsAreLeasedIndependently() throws Exception {
+    assertThat(serverA.tryAcquire(0, NOW, DURATION)).isTrue();
+    assertThat(serverB.tryAcquire(1, NOW, DURATION)).isTrue();
+    assertThat(serverA.tryAcquire(1, NOW, DURATION)).isFalse();
+
+    assertThat(holder(0)).isEqualTo("server-a");
+    assertThat(holder(1)).isEqualTo("server-b");
+  }
+
+  @Test
+  public void concurrentlyAcquiredLeaseIsNotOverwritten() throws Exception {
+    // Both servers saw the lease missing, server B acquired it first.
+    try (MetaDataUpdate mdA = newMetaDataUpdate();
+        MetaDataUpdate mdB = newMetaDataUpdate()) {
+      VersionedConfigFile fileA = TokenExpiryLease.load(mdA, 0);
+      VersionedConfigFile fileB = TokenExpiryLease.load(mdB, 0);
+      assertThat(serverB.tryAcquire(mdB, fileB, 0, NOW, DURATION)).isTrue();
+      assertThat(serverA.tryAcquire(mdA, fileA, 0, NOW, DURATION)).isFalse();
+    }
+
+    // Both servers saw the expired lease of server B, server B renewed it first.
+    Instant later = NOW.plus(DURATION);
+    try (MetaDataUpdate mdA = newMetaDataUpdate();
+        MetaDataUpdate mdB = newMetaDataUpdate()) {
+      VersionedConfigFile fileA = TokenExpiryLease.load(mdA, 0);
+      VersionedConfigFile fileB = TokenExpiryLease.load(mdB, 0);
+      assertThat(serverB.tryAcquire(mdB, fileB, 0, later, DURATION)).isTrue();
+      assertThat(serverA.tryAcquire(mdA, fileA, 0, later, DURATION)).isFalse();
+    }
+    assertThat(holder(0)).isEqualTo("server-b");
+  }
+
+  @Test
+  public void holderDefaultsToServerName() throws Exception {
+    TokenExpiryLease lease = newLease(null);
+    assertThat(lease.tryAcquire(0, NOW, DURATION)).isTrue();
+    assertThat(holder(0)).isEqualTo("Gerrit");
+  }
+
+  private TokenExpiryLease newLease(String instanceId) {
+    return new TokenExpiryLease(metaDataUpdateFactory, ALL_PROJECTS, SERVER_IDENT, instanceId);
+  }
+
+  private MetaDataUpdate newMetaDataUpdate() throws Exception {
+    MetaDataUpdate md =
+        new MetaDataUpdate(
+            GitReferenceUpdated.DISABLED, ALL_PROJECTS, repoManager.openRepository(ALL_PROJECTS));
+    md.getCommitBuilder().setAuthor(SERVER_IDENT);
+    md.getCommitBuilder().setCommitter(SERVER_IDENT);
+    return md;
+  }
+
+  private String holder(int shard) throws Exception {
+    try (MetaDataUpdate md = newMetaDataUpdate()) {
+      return TokenExpiryLease.load(md, shard).getConfig().getString("lease", null, "holder");
+    }
+  }
+}
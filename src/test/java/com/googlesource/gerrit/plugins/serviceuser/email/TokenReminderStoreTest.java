@@ -0,0 +1,105 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.serviceuser.email;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Account;
+import com.googlesource.gerrit.plugins.serviceuser.email.TokenReminderStore.SentReminders;
+import java.time.Instant;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class TokenReminderStoreTest {
+  private static final Instant NOW = Instant.parse("2026-10-01T12:00:00Z");
+  private static final Instant EXPIRES = Instant.parse("2026-11-01T12:00:00Z");
+  private static final String KEY = TokenReminderStore.key(Account.id(1000), "ci-token");
+
+  @Test
+  public void keyContainsAccountAndToken() {
+    assertThat(KEY).isEqualTo("1000/ci-token");
+  }
+
+  @Test
+  public void sentDaysAreMerged() throws Exception {
+    Config cfg = new Config();
+    TokenReminderStore.merge(cfg, ImmutableMap.of(KEY, sent(EXPIRES, 30)), NOW);
+    TokenReminderStore.merge(cfg, ImmutableMap.of(KEY, sent(EXPIRES, 7)), NOW);
+
+    SentReminders reminders = reparse(cfg).get(KEY);
+    assertThat(reminders.expirationDate).isEqualTo(EXPIRES);
+    assertThat(reminders.days).containsExactly(7, 30);
+  }
+
+  @Test
+  public void sentDaysAreResetWhenExpirationDateChanges() throws Exception {
+    Config cfg = new Config();
+    TokenReminderStore.merge(cfg, ImmutableMap.of(KEY, sent(EXPIRES, 30, 7)), NOW);
+
+    Instant renewed = EXPIRES.plusSeconds(86400 * 90);
+    TokenReminderStore.merge(cfg, ImmutableMap.of(KEY, sent(renewed, 30)), NOW);
+
+    SentReminders reminders = reparse(cfg).get(KEY);
+    assertThat(reminders.expirationDate).isEqualTo(renewed);
+    assertThat(reminders.days).containsExactly(30);
+  }
+
+  @Test
+  public void expiredEntriesArePruned() throws Exception {
+    Config cfg = new Config();
+    String expiredKey = TokenReminderStore.key(Account.id(1001), "old-token");
+    TokenReminderStore.merge(
+        cfg,
+        ImmutableMap.of(KEY, sent(EXPIRES, 30), expiredKey, sent(NOW.plusSeconds(60), 1)),
+        NOW);
+
+    TokenReminderStore.merge(cfg, ImmutableMap.of(), NOW.plusSeconds(120));
+
+    assertThat(reparse(cfg).keySet()).containsExactly(KEY);
+  }
+
+  @Test
+  public void invalidEntriesAreIgnored() throws Exception {
+    Config cfg = new Config();
+    cfg.fromText(
+        "[token \"1000/ci-token\"]\n"
+            + "  expires = 2026-11-01T12:00:00Z\n"
+            + "  sent = 30\n"
+            + "  sent = soon\n"
+            + "[token \"1001/broken\"]\n"
+            + "  expires = tomorrow\n"
+            + "  sent = 7\n");
+
+    ImmutableMap<String, SentReminders> reminders = TokenReminderStore.parse(cfg);
+    assertThat(reminders.keySet()).containsExactly(KEY);
+    assertThat(reminders.get(KEY).days).containsExactly(30);
+
+    TokenReminderStore.merge(cfg, ImmutableMap.of(), NOW);
+    assertThat(cfg.getSubsections("token")).containsExactly(KEY);
+  }
+
+  private static SentReminders sent(Instant expirationDate, Integer... days) {
+    return new SentReminders(expirationDate, ImmutableSet.copyOf(days));
+  }
+
+  /** Parses the text of the config, as it would be read after the commit. */
+  private static ImmutableMap<String, SentReminders> reparse(Config cfg) throws Exception {
+    Config stored = new Config();
+    stored.fromText(cfg.toText());
+    return TokenReminderStore.parse(stored);
+  }
+}
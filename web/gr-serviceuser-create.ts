@@ -38,6 +38,7 @@ export interface ServiceUserInfo extends AccountInfo {
   created_by?: AccountInfo;
   created_at?: string;
   owner?: GroupInfo;
+  _more_accounts?: boolean;
 }
 
 declare interface ServiceUserInput {
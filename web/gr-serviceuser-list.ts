@@ -25,6 +25,7 @@ import {AccountCapabilityInfo} from './plugin';
 import {ServiceUserInfo} from './gr-serviceuser-create';
 
 const NOT_FOUND_MESSAGE = 'Not Found';
+const SERVICE_USERS_PER_PAGE = 25;
 
 @customElement('gr-serviceuser-list')
 export class GrServiceUserList extends LitElement {
@@ -43,6 +44,17 @@ export class GrServiceUserList extends LitElement {
   @property({type: Map})
   serviceUsers = new Map<String, ServiceUserInfo>();
 
+  @state()
+  filter = '';
+
+  @state()
+  offset = 0;
+
+  @state()
+  hasMore = false;
+
+  private requestCount = 0;
+
   static override get styles() {
     return [
       window.Gerrit.styles.font as CSSResult,
@@ -68,6 +80,16 @@ export class GrServiceUserList extends LitElement {
         #createNewContainer {
           display: block;
         }
+
+        #filterContainer {
+          margin: 0 1em 0.5em;
+        }
+
+        #pageNavigation {
+          display: flex;
+          justify-content: flex-end;
+          margin: 0.5em 1em;
+        }
       `,
     ];
   }
@@ -80,6 +102,15 @@ export class GrServiceUserList extends LitElement {
         </div>
         ${this.renderCreateButton()}
       </div>
+      <div id="filterContainer">
+        <label for="filterInput">Filter:</label>
+        <input
+          id="filterInput"
+          type="text"
+          .value="${this.filter}"
+          @input="${this.handleFilterChange}"
+        />
+      </div>
       <table id="list" class="genericList">
         <tr class="headerRow">
           <th class="name topHeader">Username</th>
@@ -99,6 +130,30 @@ export class GrServiceUserList extends LitElement {
           )}
         </tbody>
       </table>
+      ${this.renderPageNavigation()}
+    `;
+  }
+
+  private renderPageNavigation() {
+    return html`
+      <nav id="pageNavigation">
+        <gr-button
+          link
+          id="prevArrow"
+          ?disabled="${this.loading || this.offset === 0}"
+          @click="${this.showPreviousPage}"
+        >
+          Previous
+        </gr-button>
+        <gr-button
+          link
+          id="nextArrow"
+          ?disabled="${this.loading || !this.hasMore}"
+          @click="${this.showNextPage}"
+        >
+          Next
+        </gr-button>
+      </nav>
     `;
   }
 
@@ -168,13 +223,49 @@ export class GrServiceUserList extends LitElement {
   }
 
   private getServiceUsers() {
+    const params = new URLSearchParams();
+    params.set('n', String(SERVICE_USERS_PER_PAGE));
+    params.set('S', String(this.offset));
+    if (this.filter) {
+      params.set('p', this.filter);
+    }
+    const request = ++this.requestCount;
     return this.pluginRestApi
-      .get<Object>('/a/config/server/serviceuser~serviceusers/')
+      .get<Object>(`/a/config/server/serviceuser~serviceusers/?${params}`)
       .then(serviceUsers => {
-        this.serviceUsers = new Map<String, ServiceUserInfo>(Object.entries(serviceUsers));
+        if (request !== this.requestCount) {
+          // a newer request was sent in the meantime
+          return;
+        }
+        const entries = Object.entries(serviceUsers) as [String, ServiceUserInfo][];
+        this.hasMore =
+          entries.length > 0 &&
+          entries[entries.length - 1][1]._more_accounts === true;
+        this.serviceUsers = new Map<String, ServiceUserInfo>(entries);
       });
   }
 
+  private reload() {
+    this.loading = true;
+    return this.getServiceUsers().then(() => (this.loading = false));
+  }
+
+  private handleFilterChange(e: Event) {
+    this.filter = (e.target as HTMLInputElement).value;
+    this.offset = 0;
+    this.reload();
+  }
+
+  private showPreviousPage() {
+    this.offset = Math.max(0, this.offset - SERVICE_USERS_PER_PAGE);
+    this.reload();
+  }
+
+  private showNextPage() {
+    this.offset += SERVICE_USERS_PER_PAGE;
+    this.reload();
+  }
+
   private computeLoadingClass() {
     return this.loading ? 'loading' : '';
   }